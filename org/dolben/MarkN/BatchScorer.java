@@ -0,0 +1,250 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import java.lang.reflect.Constructor;
+
+/**
+ *  This scores one guess against an array of candidate numbers at once.
+ *  </p><p>
+ *  A candidate is given by its <i>code</i>, an int that is the ScoreKernel
+ *  word of the number, so there must be no more than 16 digits
+ *  and 8 places.
+ *  </p><p>
+ *  get() gives a VectorBatchScorer, which uses the jdk.incubator.vector
+ *  module to score many candidates per instruction, when that class has
+ *  been built and the module added (java --add-modules jdk.incubator.vector),
+ *  and otherwise one of these, which scores one candidate at a time.
+ *  VectorBatchScorer is in its own source root, vector/, so the rest
+ *  builds without the module; it's built into the same classes after them:
+ *  </p><pre>
+ *  javac --add-modules jdk.incubator.vector -cp out -d out \
+ *      vector/org/dolben/MarkN/VectorBatchScorer.java
+ *  </pre><p>
+ */
+public class BatchScorer {
+    static final int _MAX_PLACES = 32/ScoreKernel._BITS; // places in a code
+
+    final int      _places; // the number of places
+    private byte[] _index;  // the scores of the candidates being filtered
+
+    /**
+     *  gets a scorer for a configuration
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the scorer
+     *
+     *  @exception IllegalArgumentException when there are too many digits
+     *                  or places for a code
+     */
+    public static BatchScorer get( Configuration configuration ) {
+        if ( configuration.places() > _MAX_PLACES ) {
+            throw new IllegalArgumentException("places > "+_MAX_PLACES);
+        }
+        if ( !ScoreKernel.packs(configuration) ) {
+            throw new IllegalArgumentException(
+                "digits > "+ScoreKernel._MAX_DIGITS
+            );
+        }
+        Constructor<?> vector = Lookup._CONSTRUCTOR;
+        if ( vector == null ) {
+            return new BatchScorer(configuration);
+        }
+        try {
+            return (BatchScorer)vector.newInstance(configuration);
+        } catch ( ReflectiveOperationException e ) {
+            return new BatchScorer(configuration);
+        } catch ( LinkageError e ) {
+            return new BatchScorer(configuration);
+        }
+    }
+
+    /**
+     *  This looks for the VectorBatchScorer once, the first time get() is
+     *  called, since failing to find it is slow.
+     */
+    private static final class Lookup {
+        static final Constructor<?> _CONSTRUCTOR = find(); // or null
+
+        /**
+         *  finds the constructor of the VectorBatchScorer
+         *
+         *  @return the constructor, or null if it can't be used
+         */
+        private static Constructor<?> find( ) {
+            try {
+                Class<?> c = Class.forName("org.dolben.MarkN.VectorBatchScorer");
+                return c.getDeclaredConstructor(Configuration.class);
+            } catch ( ReflectiveOperationException e ) {
+                return null;
+            } catch ( LinkageError e ) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     *  constructs a scorer that scores one candidate at a time
+     *
+     *  @param configuration the configuration
+     */
+    BatchScorer( Configuration configuration ) {
+        _places = configuration.places();
+    }
+
+    /**
+     *  gets the code of a number
+     *
+     *  @param n the number
+     *
+     *  @return the code
+     */
+    public static int code( Numbah n ) {
+        return (int)n.getWord();
+    }
+
+    /**
+     *  sets the digits of a number to those of a code
+     *
+     *  @param code the code
+     *  @param n    the number to set
+     */
+    public static void number( int code, Numbah n ) {
+        int places = n.getConfiguration().places();
+        for ( int place = 0; place < places; ++place ) {
+            n.setDigit(
+                (code>>>(ScoreKernel._BITS*place)) & (ScoreKernel._MAX_DIGITS-1),
+                place
+            );
+        }
+    }
+
+    /**
+     *  makes the codes of all the valid numbers, in order of rank
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the codes
+     */
+    public static int[] codes( Configuration configuration ) {
+        NumberTable table = NumberTable.get(configuration);
+        int[] code = new int[table.size()];
+        for ( int rank = 0; rank < code.length; ++rank ) {
+            code[rank] = code(table.get(rank));
+        }
+        return code;
+    }
+
+    /**
+     *  scores a guess against a range of candidates
+     *
+     *  @param guess the guess
+     *  @param code  the codes of the candidates
+     *  @param from  the index of the first candidate
+     *  @param to    one more than the index of the last candidate
+     *  @param index where the index of the score in the ScoreTable of each
+     *               candidate is put, at the same index as its code
+     */
+    public void score(
+        Numbah guess, int[] code, int from, int to, byte[] index
+    ) {
+        long mask = guess.getMask();
+        long word = guess.getWord();
+        for ( int i = from; i < to; ++i ) {
+            long c = code[i] & 0xffffffffL;
+            index[i] = (byte)ScoreKernel.scoreIndex(
+                mask,word,ScoreKernel.mask(c,_places),c,_places
+            );
+        }
+    }
+
+    /**
+     *  keeps only the candidates which give a guess a score,
+     *  moving them to the front of the array, in the same order
+     *  (this is not safe to call from more than one thread at a time)
+     *
+     *  @param guess      the guess
+     *  @param scoreIndex the index of the score in the ScoreTable
+     *  @param code       the codes of the candidates
+     *  @param count      the number of candidates
+     *
+     *  @return the number of candidates kept
+     */
+    public int filter( Numbah guess, int scoreIndex, int[] code, int count ) {
+        if ( _index == null || _index.length < count ) {
+            _index = new byte[count];
+        }
+        score(guess,code,0,count,_index);
+        int kept = 0;
+        for ( int i = 0; i < count; ++i ) {
+            if ( _index[i] == scoreIndex ) {
+                code[kept++] = code[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     *  tests the class, checking the scores of every pair of numbers
+     *  and timing this scorer against the one get() gives
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) {
+        Configuration configuration = Configuration.getDefault();
+        NumberTable table = NumberTable.get(configuration);
+        int[] code = codes(configuration);
+        byte[] index = new byte[code.length];
+        BatchScorer[] scorer = {
+            new BatchScorer(configuration), get(configuration)
+        };
+        for ( int s = 0; s < scorer.length; ++s ) {
+            for ( int guess = 0; guess < code.length; ++guess ) {
+                Numbah g = table.get(guess);
+                scorer[s].score(g,code,0,code.length,index);
+                for ( int target = 0; target < code.length; ++target ) {
+                    if ( index[target] != table.get(target).scoreIndex(g) ) {
+                        System.out.println(
+                            scorer[s].getClass().getName()+
+                            " failed at "+target+", "+guess
+                        );
+                        return;
+                    }
+                }
+            }
+        }
+        for ( int trial = 0; trial < 5; ++trial ) {
+            String s = "";
+            for ( int i = 0; i < scorer.length; ++i ) {
+                long start = System.nanoTime();
+                for ( int guess = 0; guess < code.length; ++guess ) {
+                    scorer[i].score(
+                        table.get(guess),code,0,code.length,index
+                    );
+                }
+                s += scorer[i].getClass().getName()+" "+
+                    (System.nanoTime()-start)/1000000+" ms ";
+            }
+            System.out.println(s);
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *  This is a set of candidate numbers, one bit for each rank
+ *  (see NumberTable), kept off the heap, either in a direct buffer or in a
+ *  file mapped into memory, so that it can hold all of the numbers of
+ *  configurations with hundreds of millions of them.
+ *  </p><p>
+ *  filter() removes the candidates that don't give a guess a score,
+ *  going through the set in order, stepping a NumberSequence from one
+ *  candidate to the next.
+ */
+public class CandidateSet {
+    private static final int _STEPS = 64; // the most steps instead of a jump
+
+    private final Configuration _configuration; // the configuration
+    private final int           _size;  // the number of ranks
+    private final int           _words; // the number of words of bits
+    private final LongBuffer    _bits;  // a bit for each rank
+    private long                _count; // the number of candidates
+
+    /**
+     *  makes a set of all the numbers, in a direct buffer
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the set
+     */
+    public static CandidateSet allocate( Configuration configuration ) {
+        int size = NumberTable.get(configuration).size();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8*words(size));
+        return new CandidateSet(configuration,size,buffer);
+    }
+
+    /**
+     *  makes a set of all the numbers, in a file mapped into memory,
+     *  which is made or overwritten
+     *
+     *  @param configuration the configuration
+     *  @param file          the file
+     *
+     *  @return the set
+     *
+     *  @exception IOException when the file cannot be written
+     */
+    public static CandidateSet map( Configuration configuration, File file )
+        throws IOException {
+        int size = NumberTable.get(configuration).size();
+        long length = 8L*words(size);
+        RandomAccessFile f = new RandomAccessFile(file,"rw");
+        try {
+            f.setLength(length);
+            ByteBuffer buffer = f.getChannel().map(
+                FileChannel.MapMode.READ_WRITE,0,length
+            );
+            return new CandidateSet(configuration,size,buffer);
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     *  gets the number of words needed for some bits
+     */
+    private static int words( int size ) {
+        return (size+63)/64;
+    }
+
+    /**
+     *  constructs a set of all the numbers in a buffer
+     */
+    private CandidateSet( Configuration configuration, int size, ByteBuffer buffer ) {
+        _configuration = configuration;
+        _size = size;
+        _words = words(size);
+        _bits = buffer.order(ByteOrder.nativeOrder()).asLongBuffer();
+        fill();
+    }
+
+    /**
+     *  puts all the numbers in the set
+     */
+    public void fill( ) {
+        for ( int w = 0; w < _words; ++w ) {
+            _bits.put(w,-1L);
+        }
+        if ( _size%64 != 0 ) {
+            _bits.put(_words-1,(1L<<(_size%64))-1);
+        }
+        _count = _size;
+    }
+
+    /**
+     *  gets the configuration of the numbers
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
+    }
+
+    /**
+     *  gets the number of candidates in the set
+     *
+     *  @return the number of candidates
+     */
+    public long count( ) {
+        return _count;
+    }
+
+    /**
+     *  tests whether or not a number is in the set
+     *
+     *  @param rank the rank of the number
+     *
+     *  @return true iff the number is a candidate
+     */
+    public boolean contains( int rank ) {
+        return (_bits.get(rank>>>6) & (1L<<rank)) != 0;
+    }
+
+    /**
+     *  takes a number out of the set
+     *
+     *  @param rank the rank of the number
+     */
+    public void remove( int rank ) {
+        long word = _bits.get(rank>>>6);
+        if ( (word & (1L<<rank)) != 0 ) {
+            _bits.put(rank>>>6,word & ~(1L<<rank));
+            --_count;
+        }
+    }
+
+    /**
+     *  finds the first candidate at or after a rank
+     *
+     *  @param rank the rank to start from
+     *
+     *  @return the rank of the candidate, or -1 if there isn't one
+     */
+    public int next( int rank ) {
+        if ( rank >= _size ) {
+            return -1;
+        }
+        int w = rank>>>6;
+        long word = _bits.get(w) & (-1L<<rank);
+        while ( word == 0 ) {
+            if ( ++w == _words ) {
+                return -1;
+            }
+            word = _bits.get(w);
+        }
+        return w*64+Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     *  copies this set into another one of the same configuration
+     *
+     *  @param set the set to copy into
+     */
+    public void copy( CandidateSet set ) {
+        for ( int w = 0; w < _words; ++w ) {
+            set._bits.put(w,_bits.get(w));
+        }
+        set._count = _count;
+    }
+
+    /**
+     *  keeps only the candidates which give a guess a score
+     *
+     *  @param guess      the guess
+     *  @param scoreIndex the index of the score in the ScoreTable
+     *
+     *  @return the number of candidates kept
+     */
+    public long filter( Numbah guess, int scoreIndex ) {
+        return filter(this,guess,scoreIndex);
+    }
+
+    /**
+     *  makes this set the candidates of another set (of the same
+     *  configuration) which give a guess a score,
+     *  leaving the other set as it was
+     *
+     *  @param set        the other set
+     *  @param guess      the guess
+     *  @param scoreIndex the index of the score in the ScoreTable
+     *
+     *  @return the number of candidates kept
+     */
+    public long filter( CandidateSet set, Numbah guess, int scoreIndex ) {
+        NumberSequence sequence = new NumberSequence(_configuration);
+        int at = 0; // the rank of the sequence
+        long count = 0;
+        for ( int w = 0; w < _words; ++w ) {
+            long word = set._bits.get(w);
+            long keep = word;
+            for ( long rest = word; rest != 0; rest &= rest-1 ) {
+                int bit = Long.numberOfTrailingZeros(rest);
+                int rank = w*64+bit;
+                if ( rank-at > _STEPS ) {
+                    sequence.setRank(rank);
+                } else {
+                    for ( ; at < rank; ++at ) {
+                        sequence.next();
+                    }
+                }
+                at = rank;
+                if ( sequence.scoreIndex(guess) != scoreIndex ) {
+                    keep &= ~(1L<<bit);
+                }
+            }
+            if ( keep != word || set != this ) {
+                _bits.put(w,keep);
+            }
+            count += Long.bitCount(keep);
+        }
+        _count = count;
+        return count;
+    }
+
+    /**
+     *  tests the class by playing a game against a pseudorandom target,
+     *  always guessing the first candidate, printing how many are left;
+     *  the digits and places are given by the NDNG.DIGITS and NDNG.PLACES
+     *  system properties and, when a file name is given,
+     *  the set is mapped to that file
+     *
+     *  @param arg an optional file name
+     */
+    public static void main( String[] arg ) throws Exception {
+        Configuration.setPlaces(System.getProperty("NDNG.PLACES"));
+        Configuration.setDigits(System.getProperty("NDNG.DIGITS"));
+        Configuration configuration = Configuration.getDefault();
+        CandidateSet set = arg.length > 0 ?
+            map(configuration,new File(arg[0])) : allocate(configuration);
+        Numbah target = Numbah.random(configuration);
+        NumberSequence guess = new NumberSequence(configuration);
+        System.out.println(configuration+", target "+target);
+        for ( int rank = 0; ; rank = set.next(0) ) {
+            guess.setRank(rank);
+            int score = target.scoreIndex(guess);
+            long start = System.currentTimeMillis();
+            long count = set.filter(guess,score);
+            System.out.println(
+                guess+" "+target.score(guess)+": "+count+" left in "+
+                (System.currentTimeMillis()-start)+" ms"
+            );
+            if ( target.score(guess).correct() ) {
+                break;
+            }
+        }
+    }
+
+}
@@ -19,6 +19,8 @@
 
 package org.dolben.MarkN; 
 
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  *  This is the configuration for the <i>N Digit Number Game</i>:
  *  the number (<i>N</i>) of places in a target or guess,
@@ -27,11 +29,186 @@ package org.dolben.MarkN;
  *  Note that the terminology is conflicting,
  *  as "<i>N Digit</i>" in the name of the game,
  *  denotes the number of <i>places</i> in a <i>Number</i>.
+ *  </p><p>
+ *  A Configuration object is one unchangeable configuration, so that games
+ *  of different shapes can be played at once. There is only one object
+ *  for each number of digits and places, got by get(), so the tables made
+ *  for it are made once. The static methods set and get the default
+ *  configuration, which can only be set before it's used.
  */
 public class Configuration {
+    // the most digits, as many as bits in a word, and their symbols
+    public  static final int    MAX_DIGITS = 64;
+    private static final String _SYMBOLS =
+        "0123456789abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ@#";
+    
     private static int     _DIGITS = 10;   // the number of digits
     private static int     _PLACES =  4;   // the number of places
     private static boolean _used = false;  // whether or not Configuration has been used
+    private static volatile Configuration _default; // the default, once used
+    private static final ConcurrentHashMap<Configuration,Configuration>
+        _configurations = new ConcurrentHashMap<>(); // the ones got
+    
+    private final int _digits; // the number of digits
+    private final int _places; // the number of places
+    
+    // the tables for this configuration, made when first needed
+    volatile NumberTable _numberTable;
+    volatile ScoreTable  _scoreTable;
+    volatile ScoreMatrix _scoreMatrix;
+    
+    /**
+     *  gets the configuration for a number of digits and places
+     *
+     *  @param digits the number of digits
+     *  @param places the number of places
+     *
+     *  @return the configuration, the same object every time
+     *
+     *  @exception IllegalArgumentException when the numbers don't make
+     *                  a valid configuration
+     */
+    public static Configuration get( int digits, int places ) {
+        Configuration c = new Configuration(digits,places);
+        Configuration got = _configurations.putIfAbsent(c,c);
+        return got == null ? c : got;
+    }
+    
+    /**
+     *  constructs a configuration
+     *
+     *  @param digits the number of digits
+     *  @param places the number of places
+     *
+     *  @exception IllegalArgumentException when the numbers don't make
+     *                  a valid configuration
+     */
+    private Configuration( int digits, int places ) {
+        if ( places < 1 ) {
+            throw new IllegalArgumentException("places < 1");
+        }
+        if ( digits < places ) {
+            throw new IllegalArgumentException("digits < places");
+        }
+        if ( digits > MAX_DIGITS ) {
+            throw new IllegalArgumentException("digits > "+MAX_DIGITS);
+        }
+        _digits = digits;
+        _places = places;
+    }
+    
+    /**
+     *  gets the number of digits of this configuration
+     *
+     *  @return the number of digits
+     */
+    public int digits( ) {
+        return _digits;
+    }
+    
+    /**
+     *  gets the number of places of this configuration
+     *
+     *  @return the number of places
+     */
+    public int places( ) {
+        return _places;
+    }
+    
+    /**
+     *  gets a mask with a bit for each of some number of digits,
+     *  the lowest bits
+     *
+     *  @param digits the number of digits, up to 64
+     *
+     *  @return the mask
+     */
+    public static long allDigits( int digits ) {
+        // a long shift uses only the low 6 bits of its count
+        return digits == 64 ? -1L : (1L<<digits)-1;
+    }
+    
+    /**
+     *  gets the symbol that shows a digit,
+     *  '0'-'9', then 'a'-'z', 'A'-'Z', '@' and '#'
+     *
+     *  @param digit the digit
+     *
+     *  @return the symbol
+     */
+    public static char symbol( int digit ) {
+        return _SYMBOLS.charAt(digit);
+    }
+    
+    /**
+     *  gets the digit that a symbol shows
+     *
+     *  @param symbol the symbol
+     *
+     *  @return the digit, or -1 if the symbol isn't one
+     */
+    public static int digit( char symbol ) {
+        return _SYMBOLS.indexOf(symbol);
+    }
+    
+    /**
+     *  tests whether or not this configuration is the same as another
+     *
+     *  @param o the other configuration
+     *
+     *  @return true iff the numbers of digits and places are the same
+     */
+    public boolean equals( Object o ) {
+        if ( !(o instanceof Configuration) ) {
+            return false;
+        }
+        Configuration c = (Configuration)o;
+        return c._digits == _digits && c._places == _places;
+    }
+    
+    /**
+     *  makes a hash code consistent with equals()
+     *
+     *  @return the hash code
+     */
+    public int hashCode( ) {
+        return _digits*31+_places;
+    }
+    
+    /**
+     *  makes a string of this configuration
+     *
+     *  @return the string of this configuration
+     */
+    public String toString( ) {
+        return "places = "+_places+", digits = "+_digits;
+    }
+    
+    /**
+     *  gets the default configuration, after which it can't be set
+     *
+     *  @return the default configuration
+     */
+    public static Configuration getDefault( ) {
+        Configuration c = _default;
+        if ( c == null ) {
+            c = useDefault();
+        }
+        return c;
+    }
+    
+    /**
+     *  makes the default configuration from the settings
+     *
+     *  @return the default configuration
+     */
+    private static synchronized Configuration useDefault( ) {
+        if ( _default == null ) {
+            _used = true;
+            _default = get(_DIGITS,_PLACES);
+        }
+        return _default;
+    }
     
     /**
      *  sets the number of digits
@@ -49,8 +226,8 @@ public class Configuration {
         }
         int digits = Integer.parseInt(s);
         validateConfiguration(digits,_PLACES);
-        if ( digits > 10 ) {
-            throw new Exception("digits > 10");
+        if ( digits > MAX_DIGITS ) {
+            throw new Exception("digits > "+MAX_DIGITS);
         }
         _DIGITS = digits;
     }
@@ -86,7 +263,9 @@ public class Configuration {
      *
      *  @exception when the configuration is invalid or has been used
      */
-    private static void validateConfiguration( int digits, int places )
+    private static synchronized void validateConfiguration(
+        int digits, int places
+    )
         throws Exception {
         if ( _used ) {
             throw new Exception("reconfiguration after use");
@@ -97,23 +276,21 @@ public class Configuration {
     }
     
     /**
-     *  gets the number of digits
+     *  gets the number of digits of the default configuration
      *
      *  @return the number of digits
      */
     public static int getDigits( ) {
-        _used = true;
-        return _DIGITS;
+        return getDefault()._digits;
     }
     
     /**
-     *  gets the number of places
+     *  gets the number of places of the default configuration
      *
      *  @return the number of places
      */
     public static int getPlaces( ) {
-        _used = true;
-        return _PLACES;
+        return getDefault()._places;
     }
     
 }
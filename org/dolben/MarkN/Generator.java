@@ -28,6 +28,33 @@ package org.dolben.MarkN;
  *  and then tellScore() to give the Generator the score for the last guess.
  */
 public abstract class Generator {
+    private final Configuration _configuration; // the configuration
+    
+    /**
+     *  constructs a Generator for the default Configuration
+     */
+    protected Generator( ) {
+        this(Configuration.getDefault());
+    }
+    
+    /**
+     *  constructs a Generator for a configuration
+     *
+     *  @param configuration the configuration of the guesses and scores
+     */
+    protected Generator( Configuration configuration ) {
+        _configuration = configuration;
+    }
+    
+    /**
+     *  gets the configuration of the guesses and scores
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
+    }
+    
     /**
      *  makes the next guess
      *
@@ -53,4 +80,16 @@ public abstract class Generator {
      */
     public abstract void retractScore( );
     
+    /**
+     *  backs up the generator by some number of guesses,
+     *  as retractScore() does for one
+     *
+     *  @param count the number of guesses to back up
+     */
+    public void retractScores( int count ) {
+        for ( int i = 0; i < count; ++i ) {
+            retractScore();
+        }
+    }
+    
 }
@@ -20,16 +20,24 @@
 package org.dolben.MarkN; 
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.stream.Stream;
 
 /**
  *  This tests an N digit number game guess generator.
  *
  *  Override the newGenerator factory method in a derived class.
+ *  When the NDNG.PARALLEL system property is "true", the targets are
+ *  split among threads, so newGenerator() must be safe to call from any.
  */
 public abstract class GeneratorTest {
+    private Configuration _configuration; // the configuration tested
+    private NumberTable   _table;         // the table of ranked numbers
+    private ScoreMatrix   _matrix;        // the score matrix, if enabled
 
     /**
-     *  constructs a GeneratorTest
+     *  constructs a GeneratorTest for the default Configuration,
+     *  as set by the NDNG.PLACES and NDNG.DIGITS system properties
      */
     public GeneratorTest( ) {
         try {
@@ -38,10 +46,29 @@ public abstract class GeneratorTest {
         } catch ( Exception e ) {
             System.out.println(e.toString());
         }
+        _configuration = Configuration.getDefault();
     }
     
     /**
-     *  makes a new Generator
+     *  constructs a GeneratorTest for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    public GeneratorTest( Configuration configuration ) {
+        _configuration = configuration;
+    }
+    
+    /**
+     *  gets the configuration tested
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
+    }
+    
+    /**
+     *  makes a new Generator for the configuration tested
      *
      *  @return the new Generator
      */
@@ -52,20 +79,67 @@ public abstract class GeneratorTest {
      *  prints how many targets required a number of guesses, the distribution
      */
     public void test( ) throws Exception {
-        System.out.println(
-            "places = "+Configuration.getPlaces()+
-            ", digits = "+Configuration.getDigits()
-        );
-        final int MAX_GUESSES = 10;
-        int[] count = new int[MAX_GUESSES];
-        NumberSequence target = new NumberSequence();
-        do  {
-            count[guesses(target)-1] += 1;
+        System.out.println(_configuration);
+        final int MIN_GUESSES = 10; // the fewest lines printed
+        _matrix = ScoreMatrix.find(_configuration);
+        if ( _matrix != null ) {
+            _table = NumberTable.get(_configuration);
+        }
+        Stream<NumberSequence> targets = NumberSequence.stream(_configuration);
+        if ( Boolean.getBoolean("NDNG.PARALLEL") ) {
+            targets = targets.parallel();
         }
-        while ( target.next() );
-        for ( int i = 0; i < MAX_GUESSES; ++i ) {
+        Histogram histogram = targets.mapToInt(target -> {
+            try {
+                return guesses(
+                    target,_matrix == null ? -1 : target.getRank()
+                );
+            } catch ( Exception e ) {
+                throw new IllegalStateException(e.getMessage(),e);
+            }
+        }).collect(Histogram::new,Histogram::add,Histogram::add);
+        int[] count = histogram._count;
+        int lines = Math.max(MIN_GUESSES,histogram._most);
+        for ( int i = 0; i < lines; ++i ) {
             System.out.print(format(i+1,2)+": ");
-            System.out.println(format(count[i],5));
+            System.out.println(format(i < count.length ? count[i] : 0,5));
+        }
+    }
+    
+    /**
+     *  This counts how many targets required each number of guesses,
+     *  with room for any number of guesses.
+     */
+    private static class Histogram {
+        int[] _count = new int[10]; // the count for each number of guesses
+        int   _most = 0;            // the most guesses counted
+        
+        /**
+         *  counts a target
+         *
+         *  @param guesses the number of guesses the target required
+         */
+        void add( int guesses ) {
+            if ( guesses > _count.length ) {
+                _count = Arrays.copyOf(_count,2*guesses);
+            }
+            _count[guesses-1] += 1;
+            _most = Math.max(_most,guesses);
+        }
+        
+        /**
+         *  adds in the counts of another histogram
+         *
+         *  @param h the other histogram
+         */
+        void add( Histogram h ) {
+            if ( h._most > _count.length ) {
+                _count = Arrays.copyOf(_count,h._most);
+            }
+            for ( int i = 0; i < h._most; ++i ) {
+                _count[i] += h._count[i];
+            }
+            _most = Math.max(_most,h._most);
         }
     }
     
@@ -83,11 +157,11 @@ public abstract class GeneratorTest {
     
     /**
      *  returns the number of guesses the generator needs
-     *  to match the given "target"
+     *  to match the given "target", with the given "rank"
      */
-    private int guesses( Numbah target ) throws Exception {
+    private int guesses( Numbah target, int rank ) throws Exception {
         Generator generator = newGenerator();
-        Numbah guess = new Numbah();
+        Numbah guess = new Numbah(_configuration);
         Score score;
         int n = 0;
         do  {
@@ -95,7 +169,13 @@ public abstract class GeneratorTest {
             if ( !generator.nextGuess(guess) ) {
                 throw new Exception("Generator failed");
             }
-            score = target.score(guess);
+            if ( _matrix != null ) {
+                score = ScoreTable.get(_configuration).get(
+                    _matrix.scoreIndex(rank,_table.rank(guess))
+                );
+            } else {
+                score = target.score(guess);
+            }
             generator.tellScore(score);
         }
         while ( !score.correct() );
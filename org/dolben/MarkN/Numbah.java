@@ -29,13 +29,38 @@ package org.dolben.MarkN;
  *  disambiguate it from java.lang.Number without having to use the whole name.
  */
 public class Numbah implements Cloneable {
+    private final Configuration _configuration;
     private int[] _digit;
+    private long  _mask;   // the digits in this number (see ScoreKernel)
+    private long  _word;   // the digits packed by place (see ScoreKernel)
+    private final boolean _packs;  // true iff the digits fit in _word
+    private boolean _dirty = true; // true when _mask and _word are stale
     
     /**
-     *  constructs a number
+     *  constructs a number for the default Configuration
      */
     public Numbah( ) {
-        _digit = new int[Configuration.getPlaces()];
+        this(Configuration.getDefault());
+    }
+    
+    /**
+     *  constructs a number for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    public Numbah( Configuration configuration ) {
+        _configuration = configuration;
+        _digit = new int[configuration.places()];
+        _packs = ScoreKernel.packs(configuration);
+    }
+    
+    /**
+     *  gets the configuration of this number
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
     }
     
     /**
@@ -44,7 +69,7 @@ public class Numbah implements Cloneable {
      *  @return the copy
      */
     public Object clone( ) {
-        Numbah n = new Numbah();
+        Numbah n = new Numbah(_configuration);
         copy(n);
         return n;
     }
@@ -55,8 +80,8 @@ public class Numbah implements Cloneable {
      *  @param n the number to be copied
      */
     public void copy( Numbah n ) {
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            n._digit[place] = _digit[place];
+        for ( int place = 0; place < _digit.length; ++place ) {
+            n.setDigit(_digit[place],place);
         }
     }
     
@@ -68,6 +93,41 @@ public class Numbah implements Cloneable {
      */
     public void setDigit( int digit, int place ) {
         _digit[place] = digit;
+        _dirty = true;
+    }
+    
+    /**
+     *  gets the mask of the digits in this number (see ScoreKernel)
+     *
+     *  @return the mask
+     */
+    public long getMask( ) {
+        if ( _dirty ) {
+            pack();
+        }
+        return _mask;
+    }
+    
+    /**
+     *  gets the word of the digits packed by place (see ScoreKernel),
+     *  which is 0 when the configuration has too many digits or places
+     *
+     *  @return the word
+     */
+    public long getWord( ) {
+        if ( _dirty ) {
+            pack();
+        }
+        return _word;
+    }
+    
+    /**
+     *  makes the mask and word from the digits
+     */
+    private void pack( ) {
+        _mask = ScoreKernel.mask(_digit);
+        _word = _packs ? ScoreKernel.word(_digit) : 0;
+        _dirty = false;
     }
 
     /**
@@ -76,7 +136,7 @@ public class Numbah implements Cloneable {
      *  @return true iff this number is valid
      */
     public boolean valid( ) {
-        for ( int i = 0; i < Configuration.getPlaces(); ++i ) {
+        for ( int i = 0; i < _digit.length; ++i ) {
             for ( int j = 0; j < i; ++j ) {
                 if ( _digit[i] == _digit[j] ) {
                     return false;
@@ -98,14 +158,39 @@ public class Numbah implements Cloneable {
     }
 
     /**
-     *  makes a pseudorandom number
+     *  makes a pseudorandom number for the default Configuration
      *
      *  @return the pseudorandom number
      */
     public static Numbah random( ) {
-        RandomDeal deal = new RandomDeal(Configuration.getDigits());
-        Numbah n = new Numbah();
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
+        return random(Configuration.getDefault());
+    }
+    
+    /**
+     *  makes a pseudorandom number for a configuration
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the pseudorandom number
+     */
+    public static Numbah random( Configuration configuration ) {
+        return random(configuration,RandomSource.get());
+    }
+
+    /**
+     *  makes a pseudorandom number for a configuration from a given source
+     *
+     *  @param configuration the configuration
+     *  @param random        the source of pseudorandom ints
+     *
+     *  @return the pseudorandom number
+     */
+    public static Numbah random(
+        Configuration configuration, RandomSource random
+    ) {
+        RandomDeal deal = new RandomDeal(configuration.digits(),random);
+        Numbah n = new Numbah(configuration);
+        for ( int place = 0; place < configuration.places(); ++place ) {
             n.setDigit(deal.next(),place);
         }
         return n;
@@ -117,12 +202,12 @@ public class Numbah implements Cloneable {
      *  @return the string of the digits in this number
      */
     public String toString( ) {
-        String s = new String();
+        char[] s = new char[_digit.length];
         
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            s += getDigit(place);
+        for ( int place = 0; place < _digit.length; ++place ) {
+            s[place] = Configuration.symbol(getDigit(place));
         }
-        return s;
+        return new String(s);
     }
     
     /**
@@ -130,19 +215,47 @@ public class Numbah implements Cloneable {
      *
      *  @param guess the guess to score
      *
-     *  @return the score
+     *  @return the score, which is shared and must not be changed
      */
     public Score score( Numbah guess ) {
-        Score s = new Score();
-        
-        for ( int i = 0; i < Configuration.getPlaces(); ++i ) {
-            for ( int j = 0; j < Configuration.getPlaces(); ++j ) {
-                if ( guess.getDigit(i) == getDigit(j) ) {
-                    s.count( i == j );
-                }
+        return ScoreTable.get(_configuration).get(scoreIndex(guess));
+    }
+    
+    /**
+     *  gets the rank of this number in the NumberTable,
+     *  when it's known without looking it up
+     *
+     *  @return the rank, or -1 if it isn't known
+     */
+    int knownRank( ) {
+        return -1;
+    }
+    
+    /**
+     *  scores a guess with this number as the target,
+     *  without making a Score
+     *  (the shared numbers of the NumberTable look it up in the
+     *  ScoreMatrix instead, when there is one)
+     *
+     *  @param guess the guess to score
+     *
+     *  @return the index of the score in the ScoreTable
+     */
+    public int scoreIndex( Numbah guess ) {
+        if ( _packs ) {
+            return ScoreKernel.scoreIndex(
+                getMask(),getWord(),guess.getMask(),guess.getWord(),
+                _digit.length
+            );
+        }
+        int placed = 0;
+        for ( int place = 0; place < _digit.length; ++place ) {
+            if ( guess._digit[place] == _digit[place] ) {
+                ++placed;
             }
         }
-        return s;
+        int common = ScoreKernel.common(getMask(),guess.getMask());
+        return ScoreTable.index(placed,common-placed,_digit.length);
     }
 
 }
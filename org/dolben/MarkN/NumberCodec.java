@@ -0,0 +1,352 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ *  This reads and writes numbers and scores in buffers,
+ *  without making any objects along the way.
+ *  </p><p>
+ *  In binary, a number is its digits packed in as few bits each as
+ *  the digits need, place 0 lowest, in numberBytes() bytes,
+ *  and a score is its index in the ScoreTable, in one byte
+ *  (or two when there are more than 15 places).
+ *  In text, a number is the symbols of its digits, place 0 first,
+ *  as Numbah.toString() gives, and a score is the number of placed and
+ *  misplaced digits in decimal separated by a space,
+ *  as Score.toString() gives.
+ *  </p><p>
+ *  A codec that reads a number or score that isn't valid throws an
+ *  IllegalArgumentException; one that runs out of a buffer throws what the
+ *  buffer does.
+ */
+public class NumberCodec {
+    private final Configuration _configuration; // the configuration
+    private final ScoreTable    _scores;  // the scores
+    private final int           _digits;  // the number of digits
+    private final int           _places;  // the number of places
+    private final int           _bits;    // the bits of a digit
+    private final int           _bytes;   // the bytes of a number
+    private final boolean       _short;   // true iff a score needs two bytes
+
+    /**
+     *  constructs a codec for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    public NumberCodec( Configuration configuration ) {
+        _configuration = configuration;
+        _scores = ScoreTable.get(configuration);
+        _digits = configuration.digits();
+        _places = configuration.places();
+        _bits = Math.max(1,32-Integer.numberOfLeadingZeros(_digits-1));
+        _bytes = (_places*_bits+7)/8;
+        _short = _scores.size() > 256;
+    }
+
+    /**
+     *  gets the configuration of the numbers
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
+    }
+
+    /**
+     *  gets the number of bytes of a number in binary
+     *
+     *  @return the number of bytes
+     */
+    public int numberBytes( ) {
+        return _bytes;
+    }
+
+    /**
+     *  gets the number of bytes of a score in binary
+     *
+     *  @return the number of bytes
+     */
+    public int scoreBytes( ) {
+        return _short ? 2 : 1;
+    }
+
+    /**
+     *  writes a number in binary
+     *
+     *  @param buffer where the number is written
+     *  @param n      the number
+     */
+    public void putNumber( ByteBuffer buffer, Numbah n ) {
+        long bits = 0; // the bits not yet written
+        int have = 0;  // the number of them
+        for ( int place = 0; place < _places; ++place ) {
+            bits |= (long)n.getDigit(place)<<have;
+            for ( have += _bits; have >= 8; have -= 8 ) {
+                buffer.put((byte)bits);
+                bits >>>= 8;
+            }
+        }
+        if ( have > 0 ) {
+            buffer.put((byte)bits);
+        }
+    }
+
+    /**
+     *  reads a number in binary
+     *
+     *  @param buffer where the number is read
+     *  @param n      where the number is put
+     *
+     *  @exception IllegalArgumentException when the number isn't valid
+     */
+    public void getNumber( ByteBuffer buffer, Numbah n ) {
+        long bits = 0; // the bits read and not yet used
+        int have = 0;  // the number of them
+        long used = 0; // the digits used
+        for ( int place = 0; place < _places; ++place ) {
+            for ( ; have < _bits; have += 8 ) {
+                bits |= (buffer.get() & 0xffL)<<have;
+            }
+            int digit = (int)(bits & ((1L<<_bits)-1));
+            bits >>>= _bits;
+            have -= _bits;
+            used = setDigit(n,digit,place,used);
+        }
+    }
+
+    /**
+     *  writes a number in text
+     *
+     *  @param buffer where the number is written
+     *  @param n      the number
+     */
+    public void putNumber( CharBuffer buffer, Numbah n ) {
+        for ( int place = 0; place < _places; ++place ) {
+            buffer.put(Configuration.symbol(n.getDigit(place)));
+        }
+    }
+
+    /**
+     *  reads a number in text
+     *
+     *  @param buffer where the number is read
+     *  @param n      where the number is put
+     *
+     *  @exception IllegalArgumentException when the number isn't valid
+     */
+    public void getNumber( CharBuffer buffer, Numbah n ) {
+        long used = 0; // the digits used
+        for ( int place = 0; place < _places; ++place ) {
+            used = setDigit(n,Configuration.digit(buffer.get()),place,used);
+        }
+    }
+
+    /**
+     *  puts a digit read into a number, checking that it's valid
+     *
+     *  @return the digits used, including this one
+     */
+    private long setDigit( Numbah n, int digit, int place, long used ) {
+        if ( digit < 0 || digit >= _digits || (used & (1L<<digit)) != 0 ) {
+            throw new IllegalArgumentException("not a number");
+        }
+        n.setDigit(digit,place);
+        return used | 1L<<digit;
+    }
+
+    /**
+     *  writes a score in binary
+     *
+     *  @param buffer     where the score is written
+     *  @param scoreIndex the index of the score in the ScoreTable
+     */
+    public void putScore( ByteBuffer buffer, int scoreIndex ) {
+        if ( _short ) {
+            buffer.putShort((short)scoreIndex);
+        } else {
+            buffer.put((byte)scoreIndex);
+        }
+    }
+
+    /**
+     *  reads a score in binary
+     *
+     *  @param buffer where the score is read
+     *
+     *  @return the index of the score in the ScoreTable
+     *
+     *  @exception IllegalArgumentException when the score isn't valid
+     */
+    public int getScore( ByteBuffer buffer ) {
+        int index = _short ? buffer.getShort() & 0xffff : buffer.get() & 0xff;
+        if ( index >= _scores.size() || !_scores.get(index).valid() ) {
+            throw new IllegalArgumentException("not a score");
+        }
+        return index;
+    }
+
+    /**
+     *  writes a score in text
+     *
+     *  @param buffer     where the score is written
+     *  @param scoreIndex the index of the score in the ScoreTable
+     */
+    public void putScore( CharBuffer buffer, int scoreIndex ) {
+        putDecimal(buffer,_scores.getPlaced(scoreIndex));
+        buffer.put(' ');
+        putDecimal(buffer,_scores.getMisplaced(scoreIndex));
+    }
+
+    /**
+     *  reads a score in text
+     *
+     *  @param buffer where the score is read
+     *
+     *  @return the index of the score in the ScoreTable
+     *
+     *  @exception IllegalArgumentException when the score isn't valid
+     */
+    public int getScore( CharBuffer buffer ) {
+        int placed = getDecimal(buffer);
+        if ( buffer.get() != ' ' ) {
+            throw new IllegalArgumentException("not a score");
+        }
+        int misplaced = getDecimal(buffer);
+        if ( placed > _places || misplaced > _places ) {
+            throw new IllegalArgumentException("not a score");
+        }
+        int index = _scores.index(placed,misplaced);
+        if ( !_scores.get(index).valid() ) {
+            throw new IllegalArgumentException("not a score");
+        }
+        return index;
+    }
+
+    /**
+     *  writes a count, which is no more than 99, in decimal
+     */
+    private static void putDecimal( CharBuffer buffer, int count ) {
+        if ( count >= 10 ) {
+            buffer.put((char)('0'+count/10));
+        }
+        buffer.put((char)('0'+count%10));
+    }
+
+    /**
+     *  reads a count of one or two decimal digits
+     */
+    private static int getDecimal( CharBuffer buffer ) {
+        int count = buffer.get()-'0';
+        if ( count < 0 || count > 9 ) {
+            throw new IllegalArgumentException("not a score");
+        }
+        if ( buffer.hasRemaining() ) {
+            int digit = buffer.get(buffer.position())-'0';
+            if ( digit >= 0 && digit <= 9 ) {
+                buffer.get();
+                count = count*10+digit;
+            }
+        }
+        return count;
+    }
+
+    /**
+     *  tests the class, writing and reading every number and every score
+     *  in both forms and checking them against toString(),
+     *  then timing writing and reading all the numbers
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) {
+        Configuration configuration = Configuration.getDefault();
+        NumberCodec codec = new NumberCodec(configuration);
+        NumberTable table = NumberTable.get(configuration);
+        ScoreTable scores = ScoreTable.get(configuration);
+        int size = table.size();
+        ByteBuffer bytes = ByteBuffer.allocate(size*codec.numberBytes());
+        CharBuffer chars = CharBuffer.allocate(size*configuration.places());
+        Numbah n = new Numbah(configuration);
+        for ( int rank = 0; rank < size; ++rank ) {
+            codec.putNumber(bytes,table.get(rank));
+            codec.putNumber(chars,table.get(rank));
+        }
+        bytes.flip();
+        chars.flip();
+        for ( int rank = 0; rank < size; ++rank ) {
+            codec.getNumber(bytes,n);
+            boolean same = table.rank(n) == rank;
+            int start = chars.position();
+            codec.getNumber(chars,n);
+            String s = new String(
+                chars.array(),start,chars.position()-start
+            );
+            if ( !same || table.rank(n) != rank || !s.equals(n.toString()) ) {
+                System.out.println("number failed at "+rank);
+                return;
+            }
+        }
+        for ( int index = 0; index < scores.size(); ++index ) {
+            if ( scores.get(index).valid() ) {
+                bytes.clear();
+                chars.clear();
+                codec.putScore(bytes,index);
+                codec.putScore(chars,index);
+                bytes.flip();
+                chars.flip();
+                String s = chars.toString();
+                if ( codec.getScore(bytes) != index ||
+                        codec.getScore(chars) != index ||
+                        !s.equals(scores.get(index).toString()) ) {
+                    System.out.println("score failed at "+index);
+                    return;
+                }
+            }
+        }
+        System.out.println(
+            size+" numbers, "+codec.numberBytes()+" bytes, "+
+            codec.scoreBytes()+" per score"
+        );
+        for ( int trial = 0; trial < 5; ++trial ) {
+            long start = System.nanoTime();
+            for ( int i = 0; i < 100; ++i ) {
+                bytes.clear();
+                chars.clear();
+                for ( int rank = 0; rank < size; ++rank ) {
+                    codec.putNumber(bytes,table.get(rank));
+                    codec.putNumber(chars,table.get(rank));
+                }
+                bytes.flip();
+                chars.flip();
+                for ( int rank = 0; rank < size; ++rank ) {
+                    codec.getNumber(bytes,n);
+                    codec.getNumber(chars,n);
+                }
+            }
+            System.out.println(
+                100*size+" numbers each way in "+
+                (System.nanoTime()-start)/1000000+" ms"
+            );
+        }
+    }
+
+}
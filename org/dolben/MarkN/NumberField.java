@@ -20,6 +20,7 @@
 package org.dolben.MarkN; 
 
 import java.awt.TextField;
+import java.nio.CharBuffer;
 
 /**
  *  This is a field for entry of an <i>N Digit Number</i>.
@@ -44,12 +45,9 @@ public class NumberField extends TextField {
     public Numbah getNumber( ) throws Exception {
         Numbah n = new Numbah();
         
-        String s = getText();
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            String d = s.substring(place,place+1);
-            n.setDigit(Integer.valueOf(d).intValue(),place);
-        }
-        if ( s.length() != Configuration.getPlaces() || !n.valid() ) {
+        CharBuffer s = CharBuffer.wrap(getText());
+        new NumberCodec(n.getConfiguration()).getNumber(s,n);
+        if ( s.hasRemaining() ) {
              throw new Exception();
         }
         return n;
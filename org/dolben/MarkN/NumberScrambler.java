@@ -27,29 +27,37 @@ package org.dolben.MarkN;
 public class NumberScrambler {
     private int[] _placeMap;  // the map of places
     private int[] _digitMap;  // the map of digits
+    private int[] _digit;     // the digits of the number being scrambled
     
     /**
-     *  constructs a new number scrambler
+     *  constructs a new number scrambler for the default Configuration
      */
     NumberScrambler( ) {
-        _placeMap = randomMap(Configuration.getPlaces());
-        _digitMap = randomMap(Configuration.getDigits());
+        this(Configuration.getDefault());
     }
     
     /**
-     *  produces a pseudorandom map
+     *  constructs a new number scrambler for a configuration
      *
-     *  @param size the size of the map to be produced
+     *  @param configuration the configuration
+     */
+    NumberScrambler( Configuration configuration ) {
+        this(configuration,RandomSource.get());
+    }
+
+    /**
+     *  constructs a new number scrambler for a configuration
+     *  from a given source
      *
-     *  @return the map
+     *  @param configuration the configuration
+     *  @param random        the source of pseudorandom ints
      */
-    private int[] randomMap( int size ) {
-        int [] map = new int[size];
-        RandomDeal deal = new RandomDeal(size);
-        for ( int i = 0; i < size; ++i ) {
-            map[i] = deal.next();
-        }
-        return map;
+    NumberScrambler( Configuration configuration, RandomSource random ) {
+        _placeMap = new int[configuration.places()];
+        _digitMap = new int[configuration.digits()];
+        random.maps(_placeMap.length,_placeMap,1);
+        random.maps(_digitMap.length,_digitMap,1);
+        _digit = new int[configuration.places()];
     }
     
     /**
@@ -58,10 +66,11 @@ public class NumberScrambler {
      *  @param s the number to be scrambled
      */
     public void scramble( Numbah s ) {
-        Numbah n = (Numbah)s.clone();
-        
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            s.setDigit(_digitMap[n.getDigit(place)],_placeMap[place]);
+        for ( int place = 0; place < _digit.length; ++place ) {
+            _digit[place] = s.getDigit(place);
+        }
+        for ( int place = 0; place < _digit.length; ++place ) {
+            s.setDigit(_digitMap[_digit[place]],_placeMap[place]);
         }
     }
 
@@ -19,20 +19,81 @@
 
 package org.dolben.MarkN; 
 
-import java.util.BitSet;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *  This is a generator of a complete sequence of valid N Digit Numbers.
+ *  </p><p>
+ *  The position of a number in the sequence is its rank (see NumberTable),
+ *  which the sequence keeps track of, and can be set to, so that the
+ *  sequence can start anywhere.
+ *  A Spliterator (or Stream) over a range of ranks can be split to
+ *  go through parts of the sequence in parallel.
+ *  A Stream of more numbers than can be ranked by an int goes through
+ *  them one after another, and doesn't split.
  */
 public class NumberSequence extends Numbah {
+    private final int _digits; // the number of digits
+    private final int _places; // the number of places
+    private long      _used;   // the set of digits used in the number
+    private int       _rank;   // the rank of the number, or -1 if not known
 
     /**
-     *  constructs a new sequence generator
+     *  constructs a new sequence generator for the default Configuration
      */
     public NumberSequence( ) {
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            setDigit( Configuration.getPlaces()-1-place, place );
+        this(Configuration.getDefault());
+    }
+    
+    /**
+     *  constructs a new sequence generator for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    public NumberSequence( Configuration configuration ) {
+        super(configuration);
+        _digits = configuration.digits();
+        _places = configuration.places();
+        for ( int place = 0; place < _places; ++place ) {
+            setDigit( _places-1-place, place );
+        }
+        _rank = 0;
+    }
+    
+    /**
+     *  sets a digit of this number, which loses track of its rank
+     *
+     *  @param digit the new digit
+     *  @param place the place to set
+     */
+    public void setDigit( int digit, int place ) {
+        super.setDigit(digit,place);
+        _rank = -1;
+    }
+    
+    /**
+     *  gets the rank of this number
+     *
+     *  @return the rank
+     */
+    public int getRank( ) {
+        if ( _rank < 0 ) {
+            _rank = NumberTable.get(getConfiguration()).rank(this);
         }
+        return _rank;
+    }
+    
+    /**
+     *  sets this number to the one with a given rank
+     *
+     *  @param rank the rank
+     */
+    public void setRank( int rank ) {
+        NumberTable.get(getConfiguration()).unrank(rank,this);
+        _rank = rank;
     }
     
     /**
@@ -41,11 +102,39 @@ public class NumberSequence extends Numbah {
      *  @return true iff there is a number left to generate 
      */
     public boolean next( ) {
-        BitSet used = new BitSet(Configuration.getDigits());
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-            used.set(getDigit(place));
+        _used = 0;
+        for ( int place = 0; place < _places; ++place ) {
+            _used |= 1L<<getDigit(place);
+        }
+        int rank = _rank;
+        if ( !nextPlace(0) ) {
+            _rank = rank;
+            return false;
+        }
+        _rank = rank < 0 || rank == Integer.MAX_VALUE ? -1 : rank+1;
+        return true;
+    }
+    
+    /**
+     *  skips the rest of the numbers with the same digits in a place and
+     *  all the places above it, by going to the last of them,
+     *  so that next() generates the first number after them
+     *
+     *  @param place the lowest place that stays the same
+     */
+    public void skip( int place ) {
+        long used = 0;
+        for ( int p = place; p < _places; ++p ) {
+            used |= 1L<<getDigit(p);
+        }
+        int digit = _digits;
+        for ( int p = place-1; p >= 0; --p ) {
+            do  {
+                --digit;
+            }
+            while ( (used & (1L<<digit)) != 0 );
+            setDigit(digit,p);
         }
-        return nextPlace(0,used);
     }
     
     /**
@@ -53,27 +142,200 @@ public class NumberSequence extends Numbah {
      *
      *  @return true iff there is a number left to generate 
      */
-    private boolean nextPlace( int place, BitSet used ) {
-        if ( place == Configuration.getPlaces() ) {
+    private boolean nextPlace( int place ) {
+        if ( place == _places ) {
             return false;
         }
         int digit = getDigit(place);
-        used.clear(digit);
+        _used &= ~(1L<<digit);
         do  {
             ++digit;
-            if ( digit == Configuration.getDigits() ) {
-                if ( !nextPlace(place+1,used) ) {
+            if ( digit == _digits ) {
+                if ( !nextPlace(place+1) ) {
                     return false;
                 }
                 digit = 0;
             }
         }
-        while ( used.get(digit) );
-        used.set(digit);
-        setDigit(digit,place);
+        while ( (_used & (1L<<digit)) != 0 );
+        _used |= 1L<<digit;
+        super.setDigit(digit,place);
         return true;
     }
     
+    /**
+     *  makes a Spliterator over the numbers with ranks in a range
+     *  </p><p>
+     *  Each part of a split gives one NumberSequence, stepped along for
+     *  each number, so the action must not keep or change it.
+     *
+     *  @param configuration the configuration
+     *  @param from          the rank of the first number
+     *  @param to            one more than the rank of the last number
+     *
+     *  @return the Spliterator
+     */
+    public static Spliterator<NumberSequence> spliterator(
+        Configuration configuration, int from, int to
+    ) {
+        return new Range(configuration,from,to);
+    }
+    
+    /**
+     *  makes a Stream of all the numbers, which can be made parallel
+     *  (see spliterator()) when they can be ranked by an int
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the Stream
+     */
+    public static Stream<NumberSequence> stream( Configuration configuration ) {
+        long size = size(configuration);
+        return StreamSupport.stream(
+            size <= Integer.MAX_VALUE ?
+                spliterator(configuration,0,(int)size) :
+                new Steps(configuration,size),
+            false
+        );
+    }
+    
+    /**
+     *  counts the numbers of a configuration, without a NumberTable
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the number of valid numbers,
+     *          or Long.MAX_VALUE if there are more than that
+     */
+    static long size( Configuration configuration ) {
+        int digits = configuration.digits();
+        int places = configuration.places();
+        long size = 1;
+        for ( int place = 0; place < places; ++place ) {
+            int ways = digits-places+1+place;
+            if ( size > Long.MAX_VALUE/ways ) {
+                return Long.MAX_VALUE;
+            }
+            size *= ways;
+        }
+        return size;
+    }
+    
+    /**
+     *  This is a Spliterator over all the numbers, in order,
+     *  for when there are too many to rank, so it doesn't split.
+     */
+    private static class Steps implements Spliterator<NumberSequence> {
+        private final NumberSequence _sequence; // the number
+        private final long _size;    // the number of numbers
+        private long       _stepped; // the number of numbers given
+        
+        /**
+         *  constructs a Spliterator over all the numbers
+         */
+        Steps( Configuration configuration, long size ) {
+            _sequence = new NumberSequence(configuration);
+            _size = size;
+        }
+        
+        public boolean tryAdvance( Consumer<? super NumberSequence> action ) {
+            if ( _stepped >= _size ) {
+                return false;
+            }
+            if ( _stepped > 0 && !_sequence.next() ) {
+                _stepped = _size;
+                return false;
+            }
+            ++_stepped;
+            action.accept(_sequence);
+            return true;
+        }
+        
+        public Spliterator<NumberSequence> trySplit( ) {
+            return null;
+        }
+        
+        public long estimateSize( ) {
+            return _size-_stepped;
+        }
+        
+        public int characteristics( ) {
+            return _size < Long.MAX_VALUE ?
+                ORDERED | SIZED | NONNULL : ORDERED | NONNULL;
+        }
+    }
+    
+    /**
+     *  This is a Spliterator over a range of ranks, which splits in half.
+     */
+    private static class Range implements Spliterator<NumberSequence> {
+        private final Configuration _configuration; // the configuration
+        private NumberSequence _sequence; // the number, made when first needed
+        private boolean        _moved;    // true if _next was moved by a split
+        private int            _next;     // the rank of the next number
+        private final int      _end;      // one more than the last rank
+        
+        /**
+         *  constructs a Spliterator over a range of ranks
+         */
+        Range( Configuration configuration, int from, int to ) {
+            _configuration = configuration;
+            _next = from;
+            _end = to;
+        }
+        
+        /**
+         *  steps the sequence to the next number
+         */
+        private void step( ) {
+            if ( _sequence == null ) {
+                _sequence = new NumberSequence(_configuration);
+                _sequence.setRank(_next);
+            } else if ( _moved ) {
+                _sequence.setRank(_next);
+            } else {
+                _sequence.next();
+            }
+            _moved = false;
+            ++_next;
+        }
+        
+        public boolean tryAdvance( Consumer<? super NumberSequence> action ) {
+            if ( _next >= _end ) {
+                return false;
+            }
+            step();
+            action.accept(_sequence);
+            return true;
+        }
+        
+        public void forEachRemaining( Consumer<? super NumberSequence> action ) {
+            while ( _next < _end ) {
+                step();
+                action.accept(_sequence);
+            }
+        }
+        
+        public Spliterator<NumberSequence> trySplit( ) {
+            int middle = (_next+_end) >>> 1;
+            if ( middle <= _next ) {
+                return null;
+            }
+            Range prefix = new Range(_configuration,_next,middle);
+            _next = middle;
+            _moved = true;
+            return prefix;
+        }
+        
+        public long estimateSize( ) {
+            return _end-_next;
+        }
+        
+        public int characteristics( ) {
+            return ORDERED | SIZED | SUBSIZED | NONNULL;
+        }
+    }
+    
     /**
      *  tests the class
      *
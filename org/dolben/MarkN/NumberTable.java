@@ -0,0 +1,280 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+/**
+ *  This is a table of all the valid <i>N Digit Numbers</i>,
+ *  indexed by their <i>rank</i>, the position of each number
+ *  in the order generated by NumberSequence.
+ *  </p><p>
+ *  A rank is a single int that stands for a number, so that a number can
+ *  be kept without a Numbah, and the table holds one shared, unchangeable
+ *  Numbah for each rank, so that a Numbah can be had for a rank
+ *  without making a new one.
+ *  Once a ScoreMatrix has been got, the shared numbers score each other
+ *  by looking the score up in it.
+ */
+public class NumberTable {
+    private final Configuration _configuration; // the configuration
+    private final int         _places; // the number of places
+    private final int[]       _count;  // ways to fill the lower places
+    private final int         _size;   // the number of valid numbers
+    private volatile Numbah[] _number; // the shared numbers, made when needed
+    private ScoreMatrix       _matrix; // the scores they look up, or null
+
+    /**
+     *  gets the table for the default Configuration
+     *
+     *  @return the table
+     */
+    public static NumberTable get( ) {
+        return get(Configuration.getDefault());
+    }
+
+    /**
+     *  gets the table for a configuration
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the table
+     */
+    public static NumberTable get( Configuration configuration ) {
+        NumberTable table = configuration._numberTable;
+        if ( table == null ) {
+            synchronized ( configuration ) {
+                table = configuration._numberTable;
+                if ( table == null ) {
+                    table = new NumberTable(configuration);
+                    configuration._numberTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     *  constructs a table for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    private NumberTable( Configuration configuration ) {
+        int digits = configuration.digits();
+        int places = configuration.places();
+        _configuration = configuration;
+        _places = places;
+        // _count[place] is the number of ways to fill the places below place
+        // with the digits not used in place and above
+        _count = new int[places];
+        long count = 1;
+        for ( int place = 0; place < places; ++place ) {
+            _count[place] = (int)count;
+            count *= digits-places+1+place;
+            if ( count > Integer.MAX_VALUE ) {
+                throw new IllegalStateException("too many numbers to rank");
+            }
+        }
+        _size = (int)count;
+    }
+
+    /**
+     *  gets the number of valid numbers, one more than the highest rank
+     *
+     *  @return the number of valid numbers
+     */
+    public int size( ) {
+        return _size;
+    }
+
+    /**
+     *  gets the rank of a valid number
+     *
+     *  @param n the number
+     *
+     *  @return the rank
+     */
+    public int rank( Numbah n ) {
+        long used = 0;
+        int rank = 0;
+        for ( int place = _places-1; place >= 0; --place ) {
+            int digit = n.getDigit(place);
+            long below = used & ((1L<<digit)-1);
+            rank += (digit-Long.bitCount(below))*_count[place];
+            used |= 1L<<digit;
+        }
+        return rank;
+    }
+
+    /**
+     *  sets the digits of a number to those of the number with a given rank
+     *
+     *  @param rank the rank
+     *  @param n    the number to set
+     */
+    public void unrank( int rank, Numbah n ) {
+        long used = 0;
+        for ( int place = _places-1; place >= 0; --place ) {
+            int skip = rank/_count[place];
+            rank -= skip*_count[place];
+            int digit = 0;
+            while ( (used & (1L<<digit)) != 0 || skip-- > 0 ) {
+                ++digit;
+            }
+            used |= 1L<<digit;
+            n.setDigit(digit,place);
+        }
+    }
+
+    /**
+     *  gets the shared number with a given rank,
+     *  which must not be changed
+     *
+     *  @param rank the rank
+     *
+     *  @return the number
+     */
+    public Numbah get( int rank ) {
+        Numbah[] number = _number;
+        if ( number == null ) {
+            number = fill();
+        }
+        return number[rank];
+    }
+
+    /**
+     *  makes the shared numbers
+     *
+     *  @return the shared numbers
+     */
+    private synchronized Numbah[] fill( ) {
+        if ( _number == null ) {
+            Numbah[] number = new Numbah[_size];
+            NumberSequence sequence = new NumberSequence(_configuration);
+            int rank = 0;
+            do  {
+                number[rank] = new Fixed(sequence,rank,_matrix);
+                ++rank;
+            }
+            while ( sequence.next() );
+            _number = number;
+        }
+        return _number;
+    }
+
+    /**
+     *  has the shared numbers score each other with a matrix,
+     *  remaking them if they've been made
+     *  (the ones already had go on scoring without it)
+     *
+     *  @param matrix the matrix
+     */
+    synchronized void share( ScoreMatrix matrix ) {
+        _matrix = matrix;
+        Numbah[] number = _number;
+        if ( number != null ) {
+            Numbah[] shared = new Numbah[_size];
+            for ( int rank = 0; rank < _size; ++rank ) {
+                shared[rank] = new Fixed(number[rank],rank,matrix);
+            }
+            _number = shared;
+        }
+    }
+
+    /**
+     *  This is a number that cannot be changed once made.
+     */
+    private static class Fixed extends Numbah {
+        private boolean           _fixed;  // true once the digits are set
+        private final int         _rank;   // the rank of the number
+        private final ScoreMatrix _matrix; // the scores, or null
+
+        /**
+         *  constructs a copy of a number that cannot be changed,
+         *  with its mask and word made before it's shared
+         *
+         *  @param n      the number to copy
+         *  @param rank   its rank
+         *  @param matrix the matrix to look up scores in, or null
+         */
+        Fixed( Numbah n, int rank, ScoreMatrix matrix ) {
+            super(n.getConfiguration());
+            n.copy(this);
+            getMask();
+            _rank = rank;
+            _matrix = matrix;
+            _fixed = true;
+        }
+
+        /**
+         *  gets the rank of the number, which is always known
+         */
+        int knownRank( ) {
+            return _rank;
+        }
+
+        /**
+         *  scores a guess with this number as the target, looking it up
+         *  in the matrix when there is one and the guess knows its rank
+         */
+        public int scoreIndex( Numbah guess ) {
+            if ( _matrix != null ) {
+                int rank = guess.knownRank();
+                if ( rank >= 0 ) {
+                    return _matrix.scoreIndex(_rank,rank);
+                }
+            }
+            return super.scoreIndex(guess);
+        }
+
+        /**
+         *  refuses to change a digit
+         */
+        public void setDigit( int digit, int place ) {
+            if ( _fixed ) {
+                throw new UnsupportedOperationException("shared Numbah");
+            }
+            super.setDigit(digit,place);
+        }
+    }
+
+    /**
+     *  tests the class
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) {
+        NumberTable table = NumberTable.get();
+        NumberSequence sequence = new NumberSequence();
+        Numbah n = new Numbah();
+        int rank = 0;
+        do  {
+            table.unrank(rank,n);
+            if ( table.rank(sequence) != rank ||
+                    !n.toString().equals(sequence.toString()) ||
+                    !table.get(rank).toString().equals(sequence.toString()) ) {
+                System.out.println("failed at "+rank+": "+sequence);
+                return;
+            }
+            ++rank;
+        }
+        while ( sequence.next() );
+        System.out.println(rank+" of "+table.size()+" numbers ranked");
+    }
+
+}
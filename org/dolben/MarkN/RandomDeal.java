@@ -23,10 +23,13 @@ package org.dolben.MarkN;
  *  This is a pseudorandom order generator for some number integers.
  *  For example, if the number of items is 10, the sequence obtained by
  *  calls of next() will be some pseudorandom permutation of 0 to 9.
+ *  Each item is drawn by swapping it with the last one left,
+ *  so the order can be dealt again with reset() without making another.
  */
 class RandomDeal {
-    private int[] _digit;  // the numbers left to deal
-    private int   _n;      // how many numbers are left to deal
+    private int[]        _digit;  // the numbers left to deal
+    private int          _n;      // how many numbers are left to deal
+    private RandomSource _random; // the source of pseudorandom ints
 
     /**
      *  constructs a new pseudorandom order generator
@@ -34,7 +37,18 @@ class RandomDeal {
      *  @param n the number of items in the sequence
      */
     RandomDeal( int n ) {
+        this(n,RandomSource.get());
+    }
+
+    /**
+     *  constructs a new pseudorandom order generator with a given source
+     *
+     *  @param n      the number of items in the sequence
+     *  @param random the source of pseudorandom ints
+     */
+    RandomDeal( int n, RandomSource random ) {
         _digit = new int[n];
+        _random = random;
         _n = n;
         for ( int i = 0; i < _n; ++i ) {
             _digit[i] = i;
@@ -47,13 +61,18 @@ class RandomDeal {
      *  @return the next item
      */
     int next( ) {
-        int pick = (int)(_n*Math.random());
+        int pick = _random.nextInt(_n);
         int digit = _digit[pick];
-        --_n;
-        for ( ; pick < _n; ++pick ) {
-            _digit[pick] = _digit[pick+1];
-        }
+        _digit[pick] = _digit[--_n];
+        _digit[_n] = digit;
         return digit;
     }
 
+    /**
+     *  starts another pseudorandom order of all the items
+     */
+    void reset( ) {
+        _n = _digit.length;
+    }
+
 }
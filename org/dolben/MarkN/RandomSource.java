@@ -0,0 +1,153 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ *  This is a source of pseudorandom ints for making targets and scramblers.
+ *  </p><p>
+ *  The shared source, from get(), draws from each thread's own generator,
+ *  so threads don't contend for it, and it can't be repeated.
+ *  A source made with a seed repeats the same ints every time,
+ *  so a game can be played again; it must be used by only one thread
+ *  at a time, but split() gives independent sources for other threads.
+ */
+public class RandomSource {
+    private static final RandomSource _SHARED = new RandomSource(null);
+
+    private final SplittableRandom _random; // the generator, null for shared
+
+    /**
+     *  gets the shared source
+     *
+     *  @return the source
+     */
+    public static RandomSource get( ) {
+        return _SHARED;
+    }
+
+    /**
+     *  constructs a source that repeats for a seed
+     *
+     *  @param seed the seed
+     */
+    public RandomSource( long seed ) {
+        this(new SplittableRandom(seed));
+    }
+
+    /**
+     *  constructs a source with a generator
+     */
+    private RandomSource( SplittableRandom random ) {
+        _random = random;
+    }
+
+    /**
+     *  makes a source for another thread, which repeats when this one does
+     *
+     *  @return the source
+     */
+    public RandomSource split( ) {
+        return _random == null ? this : new RandomSource(_random.split());
+    }
+
+    /**
+     *  gets the next int
+     *
+     *  @param bound one more than the greatest int to get
+     *
+     *  @return an int from 0 to bound-1
+     */
+    public int nextInt( int bound ) {
+        return _random == null ?
+            ThreadLocalRandom.current().nextInt(bound) : _random.nextInt(bound);
+    }
+
+    /**
+     *  makes some pseudorandom targets,
+     *  putting the digits of target t, place p at digit[t*places+p]
+     *
+     *  @param configuration the configuration
+     *  @param digit         where the digits are put
+     *  @param count         the number of targets
+     */
+    public void targets( Configuration configuration, int[] digit, int count ) {
+        deal(configuration.digits(),configuration.places(),digit,count);
+    }
+
+    /**
+     *  makes some pseudorandom maps (permutations) of 0 to size-1,
+     *  like those of a NumberScrambler,
+     *  putting entry i of map m at map[m*size+i]
+     *
+     *  @param size  the size of each map
+     *  @param map   where the maps are put
+     *  @param count the number of maps
+     */
+    public void maps( int size, int[] map, int count ) {
+        deal(size,size,map,count);
+    }
+
+    /**
+     *  deals some items of a pseudorandom order for each of some deals
+     */
+    private void deal( int n, int items, int[] item, int count ) {
+        RandomDeal deal = new RandomDeal(n,this);
+        for ( int i = 0; i < count*items; i += items ) {
+            for ( int j = 0; j < items; ++j ) {
+                item[i+j] = deal.next();
+            }
+            deal.reset();
+        }
+    }
+
+    /**
+     *  tests the class, checking that a seeded source repeats and timing
+     *  the shared source making targets
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) {
+        Configuration configuration = Configuration.getDefault();
+        int places = configuration.places();
+        int count = 1000000;
+        int[] a = new int[count*places];
+        int[] b = new int[count*places];
+        new RandomSource(4).targets(configuration,a,count);
+        new RandomSource(4).targets(configuration,b,count);
+        System.out.println(
+            java.util.Arrays.equals(a,b) ? "repeats" : "does not repeat"
+        );
+        System.out.println(
+            Numbah.random(configuration,new RandomSource(4))+" "+
+            Numbah.random(configuration,new RandomSource(4))
+        );
+        for ( int trial = 0; trial < 5; ++trial ) {
+            long start = System.nanoTime();
+            get().targets(configuration,a,count);
+            System.out.println(
+                count+" targets in "+(System.nanoTime()-start)/1000000+" ms"
+            );
+        }
+    }
+
+}
@@ -23,17 +23,39 @@ package org.dolben.MarkN;
  *  This is the score for some guess compared to a target.
  */
 public class Score implements Cloneable {
+    private final Configuration _configuration; // the configuration
+    private final int _places; // the number of places
     private int _placed;     // the number of digits in the right place
     private int _misplaced;  // the number of digits in the wrong place
     
     /**
-     *  constructs a new score
+     *  constructs a new score for the default Configuration
      */
     Score( ) {
+        this(Configuration.getDefault());
+    }
+    
+    /**
+     *  constructs a new score for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    Score( Configuration configuration ) {
+        _configuration = configuration;
+        _places = configuration.places();
         _placed = 0;
         _misplaced = 0;
     }
     
+    /**
+     *  gets the configuration of this score
+     *
+     *  @return the configuration
+     */
+    public Configuration getConfiguration( ) {
+        return _configuration;
+    }
+    
     /**
      *  makes a new copy of this score
      *
@@ -89,7 +111,7 @@ public class Score implements Cloneable {
      *  @return true iff this score is a correct guess
      */
     public boolean correct( ) {
-        return _placed == Configuration.getPlaces();
+        return _placed == _places;
     }
     
     /**
@@ -98,10 +120,10 @@ public class Score implements Cloneable {
      *  @return true iff this score is valid
      */
     public boolean valid( ) {
-        if ( _placed + _misplaced > Configuration.getPlaces() ) {
+        if ( _placed + _misplaced > _places ) {
             return false;
         }
-        if ( _placed == Configuration.getPlaces()-1 && _misplaced != 0 ) {
+        if ( _placed == _places-1 && _misplaced != 0 ) {
             return false;
         }
         return true;
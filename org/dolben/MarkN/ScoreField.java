@@ -46,10 +46,13 @@ class ScoreField extends TextField {
         Score score = new Score();
         
         String s = getText();
-        String d = s.substring(0,1);
-        score.setPlaced(Integer.valueOf(d).intValue());
-        d = s.substring(1,2);
-        score.setMisplaced(Integer.valueOf(d).intValue());
+        int placed = Configuration.digit(s.charAt(0));
+        int misplaced = Configuration.digit(s.charAt(1));
+        if ( placed < 0 || misplaced < 0 ) {
+            throw new Exception();
+        }
+        score.setPlaced(placed);
+        score.setMisplaced(misplaced);
         if ( s.length() != 2 || !score.valid() ) {
             throw new Exception();
         }
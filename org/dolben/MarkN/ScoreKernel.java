@@ -0,0 +1,230 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+/**
+ *  This scores a guess against a target with a few operations on words,
+ *  instead of comparing every pair of places.
+ *  </p><p>
+ *  A number is represented by two longs:
+ *  its <i>mask</i>, with a bit set for each digit in the number,
+ *  and its <i>word</i>, with the digit in each place packed in a field of
+ *  4 bits, place 0 lowest.
+ *  The number of digits in common is the count of bits in the AND of the
+ *  masks, the number of placed digits is the count of fields that are zero
+ *  in the XOR of the words, and the rest of the digits in common are
+ *  misplaced.
+ *  (Fields of places beyond the number are zero in both words, so they're
+ *  counted as the ones that aren't different.)
+ */
+public class ScoreKernel {
+    static final int          _BITS = 4;    // the bits in the field of a place
+    static final int          _MAX_PLACES = 64/_BITS; // the places in a word
+    static final int          _MAX_DIGITS = 1<<_BITS; // the digits in a field
+    private static final long _LOW = 0x1111111111111111L; // the low field bits
+
+    /**
+     *  cannot be constructed
+     */
+    private ScoreKernel( ) {
+    }
+
+    /**
+     *  tests whether or not the numbers of a configuration fit in a word
+     *
+     *  @param configuration the configuration
+     *
+     *  @return true iff there are few enough digits and places
+     */
+    public static boolean packs( Configuration configuration ) {
+        return configuration.digits() <= _MAX_DIGITS &&
+            configuration.places() <= _MAX_PLACES;
+    }
+
+    /**
+     *  makes the mask of a number's digits
+     *
+     *  @param digit the digit in each place
+     *
+     *  @return the mask
+     */
+    static long mask( int[] digit ) {
+        long mask = 0;
+        for ( int place = 0; place < digit.length; ++place ) {
+            mask |= 1L<<digit[place];
+        }
+        return mask;
+    }
+
+    /**
+     *  makes the mask of a number's digits from its word
+     *
+     *  @param word   the word of the number
+     *  @param places the number of places
+     *
+     *  @return the mask
+     */
+    public static long mask( long word, int places ) {
+        long mask = 0;
+        for ( int place = 0; place < places; ++place ) {
+            mask |= 1L<<((word>>>(_BITS*place)) & (_MAX_DIGITS-1));
+        }
+        return mask;
+    }
+
+    /**
+     *  makes the word of a number's places, when they fit
+     *
+     *  @param digit the digit in each place
+     *
+     *  @return the word
+     */
+    static long word( int[] digit ) {
+        long word = 0;
+        for ( int place = 0; place < digit.length; ++place ) {
+            word |= (long)digit[place]<<(_BITS*place);
+        }
+        return word;
+    }
+
+    /**
+     *  counts the digits two numbers have in common
+     *
+     *  @param mask1 the mask of one number
+     *  @param mask2 the mask of the other number
+     *
+     *  @return the number of digits in common
+     */
+    public static int common( long mask1, long mask2 ) {
+        return Long.bitCount(mask1 & mask2);
+    }
+
+    /**
+     *  counts the places where two numbers have the same digit
+     *
+     *  @param word1  the word of one number
+     *  @param word2  the word of the other number
+     *  @param places the number of places
+     *
+     *  @return the number of digits in the same place
+     */
+    public static int placed( long word1, long word2, int places ) {
+        long differ = word1 ^ word2;
+        differ |= differ>>>1;
+        differ |= differ>>>2;
+        return places-Long.bitCount(differ & _LOW);
+    }
+
+    /**
+     *  scores one number against another
+     *
+     *  @param mask1  the mask of one number
+     *  @param word1  the word of one number
+     *  @param mask2  the mask of the other number
+     *  @param word2  the word of the other number
+     *  @param places the number of places
+     *
+     *  @return the index of the score in the ScoreTable
+     */
+    public static int scoreIndex(
+        long mask1, long word1, long mask2, long word2, int places
+    ) {
+        int placed = placed(word1,word2,places);
+        return ScoreTable.index(
+            placed,common(mask1,mask2)-placed,places
+        );
+    }
+
+    /**
+     *  scores a guess against a target by comparing every pair of places,
+     *  the way it was done before, for comparison
+     */
+    private static int loopScoreIndex( Numbah target, Numbah guess ) {
+        int places = target.getConfiguration().places();
+        int placed = 0;
+        int common = 0;
+        for ( int i = 0; i < places; ++i ) {
+            for ( int j = 0; j < places; ++j ) {
+                if ( guess.getDigit(i) == target.getDigit(j) ) {
+                    ++common;
+                    if ( i == j ) {
+                        ++placed;
+                    }
+                }
+            }
+        }
+        return ScoreTable.index(placed,common-placed,places);
+    }
+
+    /**
+     *  tests the class, checking the kernel against comparing every pair of
+     *  places for every pair of numbers, and timing each of them
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) {
+        NumberTable table = NumberTable.get();
+        int size = table.size();
+        int places = Configuration.getPlaces();
+        long[] mask = new long[size];
+        long[] word = new long[size];
+        for ( int rank = 0; rank < size; ++rank ) {
+            mask[rank] = table.get(rank).getMask();
+            word[rank] = table.get(rank).getWord();
+        }
+        for ( int target = 0; target < size; ++target ) {
+            for ( int guess = 0; guess < size; ++guess ) {
+                if ( loopScoreIndex(table.get(target),table.get(guess)) !=
+                        scoreIndex(
+                            mask[target],word[target],
+                            mask[guess],word[guess],places
+                        ) ) {
+                    System.out.println("failed at "+target+", "+guess);
+                    return;
+                }
+            }
+        }
+        for ( int trial = 0; trial < 5; ++trial ) {
+            long sum = 0;
+            long start = System.nanoTime();
+            for ( int target = 0; target < size; ++target ) {
+                Numbah t = table.get(target);
+                for ( int guess = 0; guess < size; ++guess ) {
+                    sum += loopScoreIndex(t,table.get(guess));
+                }
+            }
+            long loop = System.nanoTime()-start;
+            start = System.nanoTime();
+            for ( int target = 0; target < size; ++target ) {
+                long m = mask[target];
+                long w = word[target];
+                for ( int guess = 0; guess < size; ++guess ) {
+                    sum -= scoreIndex(m,w,mask[guess],word[guess],places);
+                }
+            }
+            long kernel = System.nanoTime()-start;
+            System.out.println(
+                "loop "+loop/1000000+" ms, kernel "+kernel/1000000+" ms"+
+                (sum == 0 ? "" : ", mismatch")
+            );
+        }
+    }
+
+}
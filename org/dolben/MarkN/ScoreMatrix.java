@@ -0,0 +1,283 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.stream.IntStream;
+
+/**
+ *  This is the score of every valid number as a guess against every valid
+ *  number as a target, one byte holding the ScoreTable index for each pair,
+ *  looked up by the ranks of the two numbers in the NumberTable.
+ *  </p><p>
+ *  The matrix is computed once for a configuration and kept in a file,
+ *  "scores-<i>digits</i>-<i>places</i>.bin" in the directory given by the
+ *  NDNG.CACHE system property (the temporary directory by default),
+ *  which is mapped into memory, read only, so that any number of programs
+ *  can share it.
+ *  The matrix is only used when the NDNG.SCORE_MATRIX system property is
+ *  "true", or something gets it; once it's been got, the shared numbers
+ *  of the NumberTable look up their scores in it.
+ */
+public class ScoreMatrix {
+    private static final int _MAGIC = 0x4d61726b; // marks a complete file
+    private static final int _HEADER = 16;        // the bytes before the scores
+
+    private final NumberTable      _table;  // the table of ranked numbers
+    private final ScoreTable       _scores; // the table of indexed scores
+    private final int              _size;   // the number of valid numbers
+    private final MappedByteBuffer _buffer; // the mapped file
+
+    /**
+     *  tests whether or not a matrix should be used
+     *
+     *  @return true iff the NDNG.SCORE_MATRIX system property is "true"
+     */
+    public static boolean enabled( ) {
+        return Boolean.getBoolean("NDNG.SCORE_MATRIX");
+    }
+
+    /**
+     *  gets the matrix for a configuration, when it is enabled and can be
+     *  had, printing why not when it can't
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the matrix, or null
+     */
+    public static ScoreMatrix find( Configuration configuration ) {
+        if ( !enabled() ) {
+            return null;
+        }
+        try {
+            return get(configuration);
+        } catch ( IOException e ) {
+            System.out.println(e.toString());
+            return null;
+        }
+    }
+
+    /**
+     *  gets the matrix for the default Configuration,
+     *  computing it and writing its file when there isn't one
+     *
+     *  @return the matrix
+     *
+     *  @exception IOException when the file cannot be read or written
+     */
+    public static ScoreMatrix get( ) throws IOException {
+        return get(Configuration.getDefault());
+    }
+
+    /**
+     *  gets the matrix for a configuration,
+     *  computing it and writing its file when there isn't one
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the matrix
+     *
+     *  @exception IOException when the file cannot be read or written
+     */
+    public static ScoreMatrix get( Configuration configuration )
+        throws IOException {
+        ScoreMatrix matrix = configuration._scoreMatrix;
+        if ( matrix == null ) {
+            synchronized ( configuration ) {
+                matrix = configuration._scoreMatrix;
+                if ( matrix == null ) {
+                    matrix = new ScoreMatrix(configuration);
+                    configuration._scoreMatrix = matrix;
+                    matrix._table.share(matrix);
+                }
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     *  constructs a matrix for a configuration
+     *
+     *  @param configuration the configuration
+     *
+     *  @exception IOException when the file cannot be read or written
+     */
+    private ScoreMatrix( Configuration configuration ) throws IOException {
+        int digits = configuration.digits();
+        int places = configuration.places();
+        _table = NumberTable.get(configuration);
+        _scores = ScoreTable.get(configuration);
+        _size = _table.size();
+        long length = _HEADER+(long)_size*_size;
+        if ( length > Integer.MAX_VALUE ) {
+            throw new IOException("too many numbers for a score matrix");
+        }
+        if ( _scores.size() > 256 ) {
+            throw new IOException("too many places for a score matrix");
+        }
+        File dir = new File(
+            System.getProperty("NDNG.CACHE",System.getProperty("java.io.tmpdir"))
+        );
+        File file = new File(dir,"scores-"+digits+"-"+places+".bin");
+        MappedByteBuffer buffer = open(file,(int)length,digits,places);
+        if ( buffer == null ) {
+            build(dir,file,(int)length,digits,places);
+            buffer = open(file,(int)length,digits,places);
+            if ( buffer == null ) {
+                throw new IOException("bad score matrix "+file);
+            }
+        }
+        _buffer = buffer;
+    }
+
+    /**
+     *  maps a complete matrix file
+     *
+     *  @return the mapped file, or null if there isn't a complete one
+     */
+    private static MappedByteBuffer open(
+        File file, int length, int digits, int places
+    ) throws IOException {
+        if ( file.length() != length ) {
+            return null;
+        }
+        RandomAccessFile f = new RandomAccessFile(file,"r");
+        try {
+            MappedByteBuffer buffer = f.getChannel().map(
+                FileChannel.MapMode.READ_ONLY,0,length
+            );
+            if ( buffer.getInt(0) != _MAGIC ||
+                    buffer.getInt(4) != digits || buffer.getInt(8) != places ) {
+                return null;
+            }
+            return buffer;
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     *  computes the matrix, in parallel, into a temporary file
+     *  and then renames that to the matrix file,
+     *  so that no program ever sees a partial one
+     */
+    private void build(
+        File dir, File file, int length, int digits, int places
+    ) throws IOException {
+        dir.mkdirs();
+        File temp = File.createTempFile(file.getName(),".tmp",dir);
+        try {
+            RandomAccessFile f = new RandomAccessFile(temp,"rw");
+            try {
+                f.setLength(length);
+                final MappedByteBuffer buffer = f.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE,0,length
+                );
+                IntStream.range(0,_size).parallel().forEach(target -> {
+                    Numbah t = _table.get(target);
+                    int row = _HEADER+target*_size;
+                    for ( int guess = 0; guess < _size; ++guess ) {
+                        buffer.put(row+guess,(byte)t.scoreIndex(_table.get(guess)));
+                    }
+                });
+                buffer.putInt(4,digits);
+                buffer.putInt(8,places);
+                buffer.putInt(0,_MAGIC);
+                buffer.force();
+            } finally {
+                f.close();
+            }
+            try {
+                Files.move(
+                    temp.toPath(),file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            } catch ( AtomicMoveNotSupportedException e ) {
+                Files.move(
+                    temp.toPath(),file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     *  scores a guess against a target by their ranks
+     *
+     *  @param target the rank of the target
+     *  @param guess  the rank of the guess
+     *
+     *  @return the index of the score in the ScoreTable
+     */
+    public int scoreIndex( int target, int guess ) {
+        return _buffer.get(_HEADER+target*_size+guess) & 0xff;
+    }
+
+    /**
+     *  scores a guess against a target
+     *
+     *  @param target the target
+     *  @param guess  the guess
+     *
+     *  @return the score, which is shared and must not be changed
+     */
+    public Score score( Numbah target, Numbah guess ) {
+        return _scores.get(scoreIndex(_table.rank(target),_table.rank(guess)));
+    }
+
+    /**
+     *  tests the class by checking the matrix against Numbah.score
+     *  of numbers that don't know their ranks, so don't use the matrix
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) throws Exception {
+        long start = System.currentTimeMillis();
+        ScoreMatrix matrix = ScoreMatrix.get();
+        System.out.println(
+            "mapped in "+(System.currentTimeMillis()-start)+" ms"
+        );
+        NumberTable table = NumberTable.get();
+        Numbah t = new Numbah();
+        Numbah g = new Numbah();
+        for ( int target = 0; target < table.size(); ++target ) {
+            table.get(target).copy(t);
+            for ( int guess = 0; guess < table.size(); ++guess ) {
+                table.get(guess).copy(g);
+                if ( matrix.scoreIndex(target,guess) != t.scoreIndex(g) ) {
+                    System.out.println("failed at "+target+", "+guess);
+                    return;
+                }
+            }
+        }
+        System.out.println(table.size()+" x "+table.size()+" scores checked");
+    }
+
+}
@@ -0,0 +1,211 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+/**
+ *  This is a table of all the scores, indexed by a single int that
+ *  packs the number of placed and misplaced digits together,
+ *  so that a score can be kept and compared without a Score.
+ *  </p><p>
+ *  The table holds one shared, unchangeable Score for each index.
+ */
+public class ScoreTable {
+    private final int     _places; // the number of places
+    private final Score[] _score;  // the shared scores
+
+    /**
+     *  gets the table for the default Configuration
+     *
+     *  @return the table
+     */
+    public static ScoreTable get( ) {
+        return get(Configuration.getDefault());
+    }
+
+    /**
+     *  gets the table for a configuration
+     *
+     *  @param configuration the configuration
+     *
+     *  @return the table
+     */
+    public static ScoreTable get( Configuration configuration ) {
+        ScoreTable table = configuration._scoreTable;
+        if ( table == null ) {
+            synchronized ( configuration ) {
+                table = configuration._scoreTable;
+                if ( table == null ) {
+                    table = new ScoreTable(configuration);
+                    configuration._scoreTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     *  constructs a table for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    private ScoreTable( Configuration configuration ) {
+        int places = configuration.places();
+        _places = places;
+        _score = new Score[(places+1)*(places+1)];
+        for ( int placed = 0; placed <= places; ++placed ) {
+            for ( int misplaced = 0; misplaced <= places; ++misplaced ) {
+                _score[index(placed,misplaced,places)] =
+                    new Fixed(configuration,placed,misplaced);
+            }
+        }
+    }
+
+    /**
+     *  packs a score into an index
+     *
+     *  @param placed    the number of digits in the right place
+     *  @param misplaced the number of digits in the wrong place
+     *  @param places    the number of places
+     *
+     *  @return the index
+     */
+    static int index( int placed, int misplaced, int places ) {
+        return placed*(places+1)+misplaced;
+    }
+
+    /**
+     *  gets the number of indexes, one more than the highest index
+     *
+     *  @return the number of indexes
+     */
+    public int size( ) {
+        return _score.length;
+    }
+
+    /**
+     *  packs a score into an index
+     *
+     *  @param placed    the number of digits in the right place
+     *  @param misplaced the number of digits in the wrong place
+     *
+     *  @return the index
+     */
+    public int index( int placed, int misplaced ) {
+        return index(placed,misplaced,_places);
+    }
+
+    /**
+     *  gets the index of a score
+     *
+     *  @param score the score
+     *
+     *  @return the index
+     */
+    public int index( Score score ) {
+        return index(score.getPlaced(),score.getMisplaced(),_places);
+    }
+
+    /**
+     *  gets the number of digits in the right place from an index
+     *
+     *  @param index the index of a score
+     *
+     *  @return the number of digits in the right place
+     */
+    public int getPlaced( int index ) {
+        return index/(_places+1);
+    }
+
+    /**
+     *  gets the number of digits in the wrong place from an index
+     *
+     *  @param index the index of a score
+     *
+     *  @return the number of digits in the wrong place
+     */
+    public int getMisplaced( int index ) {
+        return index%(_places+1);
+    }
+
+    /**
+     *  gets the shared score with a given index,
+     *  which must not be changed
+     *
+     *  @param index the index
+     *
+     *  @return the score
+     */
+    public Score get( int index ) {
+        return _score[index];
+    }
+
+    /**
+     *  This is a score that cannot be changed once made.
+     */
+    private static class Fixed extends Score {
+
+        /**
+         *  constructs a score that cannot be changed
+         *
+         *  @param configuration the configuration
+         *  @param placed        the number of digits in the right place
+         *  @param misplaced     the number of digits in the wrong place
+         */
+        Fixed( Configuration configuration, int placed, int misplaced ) {
+            super(configuration);
+            super.setPlaced(placed);
+            super.setMisplaced(misplaced);
+        }
+
+        /**
+         *  makes a copy that can be changed
+         *
+         *  @return the copy
+         */
+        public Object clone( ) {
+            Score s = new Score(getConfiguration());
+            s.setPlaced(getPlaced());
+            s.setMisplaced(getMisplaced());
+            return s;
+        }
+
+        /**
+         *  refuses to change the number of digits in the right place
+         */
+        public void setPlaced( int placed ) {
+            throw new UnsupportedOperationException("shared Score");
+        }
+
+        /**
+         *  refuses to change the number of digits in the wrong place
+         */
+        public void setMisplaced( int misplaced ) {
+            throw new UnsupportedOperationException("shared Score");
+        }
+
+        /**
+         *  refuses to change either counter
+         */
+        public void count( boolean inplace ) {
+            throw new UnsupportedOperationException("shared Score");
+        }
+    }
+
+}
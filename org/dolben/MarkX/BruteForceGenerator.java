@@ -20,6 +20,10 @@
 package org.dolben.MarkX; 
 
 import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *  This class contains the <i>N</i> digit number game guess Generator
@@ -28,21 +32,71 @@ import org.dolben.MarkN.*;
  *  For each next guess it simply goes through a sequence of valid numbers
  *  to find one that could have given all of the scores that were obtained
  *  for the previous guesses.
+ *  <p></p>
+ *  The places of a number are checked from the highest, the one that
+ *  changes slowest in the sequence, down, and when the digits so far
+ *  already can't give some previous score, all the numbers that start
+ *  with them are skipped.
+ *  <p></p>
+ *  In parallel mode (given to the constructor, or by the
+ *  NDNG.PARALLEL_GUESS system property), the rest of the sequence is split
+ *  into ranges that are searched in a ForkJoinPool, and the guess is the
+ *  first possible number of the first range that has one, so the guesses
+ *  are the same.
  */
 class BruteForceGenerator extends Generator {
     private int              _guesses;  // the number of guesses made so far
     private NumberSequence   _sequence; // a sequence generator
     private Numbah[]         _guess;    // the guesses that have been made
-    private Score[]          _score;    // the scores give for the guesses made
-    private static final int _MAX_GUESSES = 10; // maximum number of guesses
+    private int[]            _rank;     // their ranks, if there's a matrix
+    private ScoreTable       _scores;   // the table of indexed scores
+    private int[]            _score;    // the indexes of the scores given
+    private int[]            _placed;   // the placed digits of each score
+    private int[]            _common;   // the digits in common of each score
+    private int[]            _placedSoFar; // the placed digits of a start
+    private int[]            _commonSoFar; // the common digits of a start
+    private ScoreMatrix      _matrix;   // the score matrix, if enabled
+    private final boolean    _parallel; // true iff searching in parallel
+    private AtomicInteger    _found;    // the lowest possible rank found
+    private static final int _GUESSES = 10; // the initial room for guesses
+    private static final int _RANKS = 1<<12; // the fewest ranks to split
     
     /**
-     *  constructs a BruteForceGenerator
+     *  constructs a BruteForceGenerator for the default Configuration
      */
     BruteForceGenerator() {
-        _sequence = new NumberSequence();
-        _guess = new Numbah[_MAX_GUESSES];
-        _score = new Score[_MAX_GUESSES];
+        this(Configuration.getDefault());
+    }
+    
+    /**
+     *  constructs a BruteForceGenerator for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    BruteForceGenerator( Configuration configuration ) {
+        this(configuration,Boolean.getBoolean("NDNG.PARALLEL_GUESS"));
+    }
+    
+    /**
+     *  constructs a BruteForceGenerator for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param parallel      true to search for each guess in parallel
+     */
+    BruteForceGenerator( Configuration configuration, boolean parallel ) {
+        super(configuration);
+        _parallel = parallel;
+        _found = new AtomicInteger();
+        _sequence = new NumberSequence(configuration);
+        _guess = new Numbah[_GUESSES];
+        _rank = new int[_GUESSES];
+        _scores = ScoreTable.get(configuration);
+        _score = new int[_GUESSES];
+        _placed = new int[_GUESSES];
+        _common = new int[_GUESSES];
+        _placedSoFar = new int[_GUESSES];
+        _commonSoFar = new int[_GUESSES];
+        _matrix = ScoreMatrix.find(configuration);
         _guesses = 0;
     }
     
@@ -57,7 +111,17 @@ class BruteForceGenerator extends Generator {
      *  the previous guesses are logically inconsistent.)
      */
     public boolean nextGuess( Numbah guess ) {
-        if ( _guesses > 0 ) {
+        if ( _guesses > 0 && _parallel && _matrix == null ) {
+            int size = NumberTable.get(getConfiguration()).size();
+            _found.set(Integer.MAX_VALUE);
+            int rank = ForkJoinPool.commonPool().invoke(
+                new Search(_sequence.getRank()+1,size)
+            );
+            if ( rank < 0 ) {
+                return false;
+            }
+            _sequence.setRank(rank);
+        } else if ( _guesses > 0 ) {
             do  {
                 if ( !_sequence.next() ) {
                     _guess[_guesses-1].copy(_sequence);
@@ -66,22 +130,153 @@ class BruteForceGenerator extends Generator {
             }
             while ( !possible() );
         }
+        if ( _guesses == _guess.length ) {
+            _guess = Arrays.copyOf(_guess,2*_guesses);
+            _rank = Arrays.copyOf(_rank,2*_guesses);
+            _score = Arrays.copyOf(_score,2*_guesses);
+            _placed = Arrays.copyOf(_placed,2*_guesses);
+            _common = Arrays.copyOf(_common,2*_guesses);
+            _placedSoFar = new int[2*_guesses];
+            _commonSoFar = new int[2*_guesses];
+        }
+        if ( _guess[_guesses] == null ) {
+            _guess[_guesses] = new Numbah(getConfiguration());
+        }
+        _sequence.copy(_guess[_guesses]);
+        _guess[_guesses].getMask(); // packed here, not by the searches
+        if ( _matrix != null ) {
+            _rank[_guesses] = _sequence.getRank();
+        }
         _sequence.copy(guess);
-        _guess[_guesses++] = (Numbah)guess.clone();
+        ++_guesses;
         return true;
     }
     
     /**
      *  @return true iff current sequence gets scores equal to those for
-     *  all previous guesses
+     *  all previous guesses; if not, the sequence may skip ahead to the last
+     *  number that starts with the same impossible digits
      */
     private boolean possible( ) {
+        if ( _matrix != null ) {
+            int rank = _sequence.getRank();
+            for ( int i = 0; i < _guesses; ++i ) {
+                if ( _score[i] != _matrix.scoreIndex(rank,_rank[i]) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        int place = impossiblePlace(_sequence,_placedSoFar,_commonSoFar);
+        if ( place < 0 ) {
+            return true;
+        }
+        _sequence.skip(place);
+        return false;
+    }
+    
+    /**
+     *  finds the lowest place of the shortest impossible start of the
+     *  current sequence, where the digits from the highest place down to it
+     *  give some previous guess more placed or common digits than its score,
+     *  or too few to get there with the places left
+     *
+     *  @param n           the number
+     *  @param placedSoFar where the placed digits so far are counted
+     *  @param commonSoFar where the common digits so far are counted
+     *
+     *  @return the place, or -1 if the whole number is possible
+     */
+    private int impossiblePlace(
+        Numbah n, int[] placedSoFar, int[] commonSoFar
+    ) {
         for ( int i = 0; i < _guesses; ++i ) {
-            if ( !_score[i].equal(_sequence.score(_guess[i])) ) {
-                return false;
+            placedSoFar[i] = 0;
+            commonSoFar[i] = 0;
+        }
+        for ( int place = getConfiguration().places()-1; place >= 0; --place ) {
+            int digit = n.getDigit(place);
+            for ( int i = 0; i < _guesses; ++i ) {
+                if ( (_guess[i].getMask() & (1L<<digit)) != 0 ) {
+                    ++commonSoFar[i];
+                    if ( _guess[i].getDigit(place) == digit ) {
+                        ++placedSoFar[i];
+                    }
+                }
+                if ( placedSoFar[i] > _placed[i] ||
+                        commonSoFar[i] > _common[i] ||
+                        placedSoFar[i]+place < _placed[i] ||
+                        commonSoFar[i]+place < _common[i] ) {
+                    return place;
+                }
             }
         }
-        return true;
+        return -1;
+    }
+    
+    /**
+     *  This is a search for the first possible number in a range of ranks,
+     *  which splits the range in half until it's small,
+     *  and gives up on ranks after one already found.
+     */
+    private class Search extends RecursiveTask<Integer> {
+        public static final long serialVersionUID = 1;
+        
+        private final int _from; // the first rank
+        private final int _to;   // one more than the last rank
+        
+        /**
+         *  constructs a search of a range of ranks
+         */
+        Search( int from, int to ) {
+            _from = from;
+            _to = to;
+        }
+        
+        /**
+         *  searches the range
+         *
+         *  @return the rank of the first possible number, or -1 if none
+         */
+        protected Integer compute( ) {
+            if ( _to-_from <= _RANKS ) {
+                return first();
+            }
+            int middle = (_from+_to) >>> 1;
+            Search after = new Search(middle,_to);
+            after.fork();
+            int rank = new Search(_from,middle).compute();
+            int later = after.join();
+            return rank >= 0 ? rank : later;
+        }
+        
+        /**
+         *  searches the range one number after another
+         *
+         *  @return the rank of the first possible number, or -1 if none
+         */
+        private int first( ) {
+            if ( _from >= _to ) {
+                return -1;
+            }
+            NumberSequence n = new NumberSequence(getConfiguration());
+            int[] placedSoFar = new int[_guesses];
+            int[] commonSoFar = new int[_guesses];
+            n.setRank(_from);
+            for ( int rank = _from; rank < _to && rank < _found.get(); ) {
+                int place = impossiblePlace(n,placedSoFar,commonSoFar);
+                if ( place < 0 ) {
+                    _found.accumulateAndGet(rank,Math::min);
+                    return rank;
+                }
+                n.skip(place);
+                if ( !n.next() ) {
+                    break;
+                }
+                rank = n.getRank();
+            }
+            return -1;
+        }
     }
     
     /**
@@ -90,7 +285,9 @@ class BruteForceGenerator extends Generator {
      *  @param score the score for the last guess
      */
     public void tellScore( Score score ) {
-        _score[_guesses-1] = (Score)score.clone();
+        _score[_guesses-1] = _scores.index(score);
+        _placed[_guesses-1] = score.getPlaced();
+        _common[_guesses-1] = score.getPlaced()+score.getMisplaced();
     }
 
     /**
@@ -109,10 +306,10 @@ class BruteForceGenerator extends Generator {
     public static void main( String[] arg ) throws Exception {
         GeneratorTest test = new GeneratorTest() {
             public Generator newGenerator() {
-                return new BruteForceGenerator();
+                return new BruteForceGenerator(getConfiguration());
             }
         };
-    test.test();
+        test.test();
     }
     
 }
@@ -0,0 +1,246 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ *  This class contains the <i>N</i> digit number game guess Generator
+ *  that looks up each guess of a deterministic Generator in a GuessCache
+ *  shared by many games, and only asks the Generator when it isn't there.
+ *  <p></p>
+ *  The Generator is made when it's first asked, and is then kept behind
+ *  the history of this one: when it's asked again, it is backed up to the
+ *  last guess whose scores agree, and told the scores since, making the
+ *  guesses after them, which are the ones in the history, until it makes
+ *  the next guess.
+ *  Each guess it makes on the way is checked against the history; if one
+ *  isn't the same, the Generator is made again and told the whole history,
+ *  and if a guess still isn't the same, it isn't deterministic,
+ *  so nothing it makes can be cached, and an IllegalStateException is
+ *  thrown.
+ *  A PartitionGenerator, for one, is only deterministic when its time
+ *  budget isn't hit.
+ */
+class CachingGenerator extends Generator {
+    private static final int _GUESSES = 10; // the initial room for guesses
+    private static final int _SLOTS = 1<<16; // the guesses cached by default
+    private final GuessCache _cache;     // the guesses after histories
+    private final Supplier<Generator> _factory; // makes the generator
+    private final ScoreTable _scores;    // the table of indexed scores
+    private final int        _places;    // the number of places
+    private final int        _width;     // the ints of a guess and score
+    private int[]            _history;   // the guesses and scores
+    private int              _guesses;   // the number of guesses made
+    private Generator        _generator; // the generator, once it's asked
+    private int[]            _told;      // the scores told it
+    private int              _made;      // the number of guesses it made
+    private final Numbah     _next;      // the guess it makes
+
+    /**
+     *  constructs a generator for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param cache         the cache of guesses, shared
+     *  @param factory       makes the generator when it's needed
+     */
+    CachingGenerator(
+        Configuration configuration, GuessCache cache,
+        Supplier<Generator> factory
+    ) {
+        super(configuration);
+        _cache = cache;
+        _factory = factory;
+        _scores = ScoreTable.get(configuration);
+        _places = configuration.places();
+        _width = _places+1;
+        _history = new int[_GUESSES*_width];
+        _guesses = 0;
+        _told = new int[_GUESSES];
+        _made = 0;
+        _next = new Numbah(configuration);
+    }
+
+    /**
+     *  generates the next guess
+     *
+     *  @param guess the next generated guess
+     *
+     *  @return true iff there is a next guess.
+     *
+     *  (It won't be possible to generate a guess if scores given for
+     *  the previous guesses are logically inconsistent.)
+     */
+    public boolean nextGuess( Numbah guess ) {
+        int length = _guesses*_width;
+        if ( !_cache.get(_history,length,_next) ) {
+            if ( !search() ) {
+                return false;
+            }
+            _cache.put(_history,length,_next);
+        }
+        if ( length+_width > _history.length ) {
+            _history = Arrays.copyOf(_history,2*_history.length);
+        }
+        for ( int place = 0; place < _places; ++place ) {
+            _history[length+place] = _next.getDigit(place);
+        }
+        _next.copy(guess);
+        ++_guesses;
+        return true;
+    }
+
+    /**
+     *  brings the generator up to the history and has it make the next guess
+     *
+     *  @return true iff it makes one
+     */
+    private boolean search( ) {
+        int replayed = replay();
+        if ( replayed < 0 ) {
+            _generator = null;
+            replayed = replay();
+            if ( replayed < 0 ) {
+                throw new IllegalStateException("Generator isn't deterministic");
+            }
+        }
+        return replayed > 0;
+    }
+
+    /**
+     *  brings the generator up to the history, checking each guess it
+     *  makes against it, and has it make the next guess
+     *
+     *  @return 1 if it makes one, 0 if it doesn't,
+     *  or -1 if a guess isn't the one in the history
+     */
+    private int replay( ) {
+        int agree = 0;
+        while ( agree < Math.min(_made-1,_guesses) &&
+                _told[agree] == score(agree) ) {
+            ++agree;
+        }
+        if ( _generator == null || (_made > 0 && _guesses == 0) ) {
+            _generator = _factory.get();
+            _made = 0;
+        }
+        while ( _made-1 > agree || (_made > _guesses && _made > 1) ) {
+            _generator.retractScore();
+            --_made;
+        }
+        if ( _made == 0 ) {
+            if ( !_generator.nextGuess(_next) ) {
+                return 0;
+            }
+            _made = 1;
+            if ( !made(0) ) {
+                return -1;
+            }
+        }
+        while ( _made <= _guesses ) {
+            if ( _made > _told.length ) {
+                _told = Arrays.copyOf(_told,2*_told.length);
+            }
+            _told[_made-1] = score(_made-1);
+            _generator.tellScore(_scores.get(_told[_made-1]));
+            if ( !_generator.nextGuess(_next) ) {
+                return 0;
+            }
+            ++_made;
+            if ( !made(_made-1) ) {
+                return -1;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     *  tests whether or not the guess the generator made is the one in the
+     *  history, if there's one there
+     *
+     *  @param guess the number of the guess, from 0
+     */
+    private boolean made( int guess ) {
+        if ( guess >= _guesses ) {
+            return true;
+        }
+        for ( int place = 0; place < _places; ++place ) {
+            if ( _next.getDigit(place) != _history[guess*_width+place] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  gets the index of the score of a guess in the history
+     */
+    private int score( int guess ) {
+        return _history[guess*_width+_places];
+    }
+
+    /**
+     *  is given a score for the last guess
+     *
+     *  @param score the score for the last guess
+     */
+    public void tellScore( Score score ) {
+        _history[(_guesses-1)*_width+_places] = _scores.index(score);
+    }
+
+    /**
+     *  backs up to state before last nextGuess()
+     */
+    public void retractScore( ) {
+        _guesses--;
+    }
+
+    /**
+     *  tests the class, caching the guesses of the generator named
+     *  (Monitors by default, see TreeCompiler), in as many slots as the
+     *  NDNG.GUESS_CACHE system property gives;
+     *  a Partition generator must have a budget (NDNG.BUDGET) it doesn't
+     *  hit, or it may not be deterministic
+     *
+     *  @param arg the name of the generator
+     */
+    public static void main( String[] arg ) throws Exception {
+        final String name = arg.length > 0 ? arg[0] : "Monitors";
+        final GuessCache cache =
+            new GuessCache(Integer.getInteger("NDNG.GUESS_CACHE",_SLOTS));
+        GeneratorTest test = new GeneratorTest() {
+            public Generator newGenerator() {
+                final Configuration configuration = getConfiguration();
+                return new CachingGenerator(
+                    configuration,cache,
+                    () -> TreeCompiler.newGenerator(name,configuration)
+                );
+            }
+        };
+        long start = System.currentTimeMillis();
+        test.test();
+        System.out.println(
+            name+": "+cache+", in "+(System.currentTimeMillis()-start)+" ms"
+        );
+    }
+
+}
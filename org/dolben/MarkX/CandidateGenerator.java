@@ -0,0 +1,346 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  This class contains the <i>N</i> digit number game guess Generator
+ *  that keeps the set of candidates.
+ *  <p></p>
+ *  It keeps the numbers that could have given all of the scores so far
+ *  and, when told a score, keeps only the candidates that give the last
+ *  guess that score, so each score costs time for the candidates left
+ *  instead of for all the numbers and all the guesses.
+ *  It guesses the first candidate in order of rank, so it makes the same
+ *  guesses as the BruteForceGenerator.
+ *  <p></p>
+ *  The first guess is always the same, and so is each guess after the same
+ *  scores, so the candidates are shared by all the generators of a
+ *  configuration, on any thread, while there are many of them:
+ *  the first time a first score is given, one pass through all the
+ *  numbers splits them by the score they give the first guess into lists,
+ *  and the first time a shared list of at least _SHARED candidates is
+ *  reached, it is split the same way by the score they give its first
+ *  candidate, the next guess.
+ *  The shared lists are kept for as long as the program runs
+ *  (at most an int for each number for each guess).
+ *  A generator keeps its own list of the candidates after each score
+ *  after that, so the memory taken follows the candidates left.
+ *  <p></p>
+ *  A candidate in a list is its BatchScorer code when the numbers have
+ *  codes, so a list is scored a batch at a time, and otherwise its rank,
+ *  and the candidates are scored one at a time by stepping a NumberSequence
+ *  to each of them.
+ *  The candidates before each score are kept, so retractScore() just goes
+ *  back to an earlier list.
+ */
+class CandidateGenerator extends Generator {
+    private static final int _GUESSES = 10; // the initial room for guesses
+    private static final int _ROOM = 64;    // the initial room for a list
+    private static final int _STEPS = 64;   // the most steps instead of a jump
+    private static final int _SHARED = 1<<6; // the fewest candidates shared
+    private static final ConcurrentHashMap<Configuration,Split> _splits =
+        new ConcurrentHashMap<>(); // the split of all the numbers
+    private int              _guesses;  // the number of guesses made so far
+    private Split[]          _split;    // the shared split after each score
+    private int[][]          _rank;     // the candidates after each score
+    private int[]            _count;    // the number of them
+    private int[][]          _own;      // this one's lists of candidates
+    private BatchScorer      _batch;    // the scorer of codes, or null
+    private byte[]           _code;     // the scores of a list of codes
+    private int[]            _index;    // the scores of a list
+    private Numbah[]         _guess;    // the guesses that have been made
+    private NumberSequence   _sequence; // the number of a candidate
+    private int              _at;       // the rank of the sequence
+    private ScoreTable       _scores;   // the table of indexed scores
+
+    /**
+     *  constructs a CandidateGenerator for the default Configuration
+     */
+    CandidateGenerator() {
+        this(Configuration.getDefault());
+    }
+
+    /**
+     *  constructs a CandidateGenerator for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    CandidateGenerator( Configuration configuration ) {
+        super(configuration);
+        _split = new Split[_GUESSES+1];
+        _rank = new int[_GUESSES+1][];
+        _count = new int[_GUESSES+1];
+        _own = new int[_GUESSES+1][];
+        _guess = new Numbah[_GUESSES];
+        _sequence = new NumberSequence(configuration);
+        _scores = ScoreTable.get(configuration);
+        try {
+            _batch = BatchScorer.get(configuration);
+        } catch ( IllegalArgumentException e ) {
+            _batch = null; // the numbers don't have codes
+        }
+        _code = new byte[_ROOM];
+        _index = new int[_ROOM];
+        _guesses = 0;
+    }
+
+    /**
+     *  generates the next guess
+     *
+     *  @param guess the next generated guess
+     *
+     *  @return true iff there is a next guess.
+     *
+     *  (It won't be possible to generate a guess if scores given for
+     *  the previous guesses are logically inconsistent.)
+     */
+    public boolean nextGuess( Numbah guess ) {
+        if ( _guesses > 0 && _count[_guesses] == 0 ) {
+            return false;
+        }
+        if ( _guesses == _guess.length ) {
+            _guess = Arrays.copyOf(_guess,2*_guesses);
+            _split = Arrays.copyOf(_split,2*_guesses+1);
+            _rank = Arrays.copyOf(_rank,2*_guesses+1);
+            _count = Arrays.copyOf(_count,2*_guesses+1);
+            _own = Arrays.copyOf(_own,2*_guesses+1);
+        }
+        if ( _guess[_guesses] == null ) {
+            _guess[_guesses] = new Numbah(getConfiguration());
+        }
+        if ( _guesses == 0 ) {
+            _sequence.setRank(0);
+            _sequence.copy(_guess[0]);
+        } else {
+            number(_rank[_guesses][0],_guess[_guesses]);
+        }
+        _guess[_guesses].copy(guess);
+        ++_guesses;
+        return true;
+    }
+
+    /**
+     *  is given a score for the last guess
+     *
+     *  @param score the score for the last guess
+     */
+    public void tellScore( Score score ) {
+        int index = _scores.index(score);
+        Split from = _guesses == 1 ?
+            _splits.computeIfAbsent(getConfiguration(),c -> all()) :
+            _split[_guesses-1];
+        if ( from != null ) {
+            // a shared list, which is never changed
+            _rank[_guesses] = from._rank[index];
+            _count[_guesses] = from._rank[index].length;
+            _split[_guesses] = _count[_guesses] < _SHARED ?
+                null : next(from,index);
+            return;
+        }
+        Numbah guess = _guess[_guesses-1];
+        if ( _own[_guesses] == null ) {
+            _own[_guesses] = new int[_ROOM];
+        }
+        int kept = 0;
+        int[] candidate = _rank[_guesses-1];
+        int count = _count[_guesses-1];
+        int[] scores = score(candidate,count,guess);
+        for ( int c = 0; c < count; ++c ) {
+            if ( scores[c] == index ) {
+                int[] to = _own[_guesses];
+                if ( kept == to.length ) {
+                    to = Arrays.copyOf(to,2*kept);
+                    _own[_guesses] = to;
+                }
+                to[kept++] = candidate[c];
+            }
+        }
+        _rank[_guesses] = _own[_guesses];
+        _count[_guesses] = kept;
+        _split[_guesses] = null;
+    }
+
+    /**
+     *  This is a guess, the first of some candidates, and the candidates
+     *  split by the score they give it, shared and never changed.
+     */
+    private static final class Split {
+        final int[][] _rank;  // the candidates for each score
+        final AtomicReferenceArray<Split> _next; // the splits of them
+
+        /**
+         *  constructs a split, trimming the lists of candidates
+         */
+        Split( int[][] rank, int[] count ) {
+            for ( int s = 0; s < rank.length; ++s ) {
+                rank[s] = rank[s] == null ?
+                    new int[0] : Arrays.copyOf(rank[s],count[s]);
+            }
+            _rank = rank;
+            _next = new AtomicReferenceArray<Split>(rank.length);
+        }
+
+        /**
+         *  adds a candidate to the list for a score,
+         *  growing the list as needed
+         */
+        static void add( int[][] rank, int[] count, int s, int c ) {
+            if ( rank[s] == null ) {
+                rank[s] = new int[_ROOM];
+            } else if ( count[s] == rank[s].length ) {
+                rank[s] = Arrays.copyOf(rank[s],2*count[s]);
+            }
+            rank[s][count[s]++] = c;
+        }
+    }
+
+    /**
+     *  goes through all the numbers to split them by the score they give
+     *  the first guess, the first of them
+     *
+     *  @return the split
+     */
+    private Split all( ) {
+        NumberSequence n = new NumberSequence(getConfiguration());
+        Numbah first = new Numbah(getConfiguration());
+        n.copy(first);
+        int[][] rank = new int[_scores.size()][];
+        int[] count = new int[rank.length];
+        int at = 0;
+        do  {
+            Split.add(
+                rank,count,n.scoreIndex(first),
+                _batch == null ? at : BatchScorer.code(n)
+            );
+            ++at;
+        }
+        while ( n.next() );
+        return new Split(rank,count);
+    }
+
+    /**
+     *  gets the shared split of the candidates a split has for a score,
+     *  making it if no generator of the configuration has
+     *
+     *  @param from  the split
+     *  @param index the index of the score in the ScoreTable
+     *
+     *  @return the split of them
+     */
+    private Split next( Split from, int index ) {
+        Split split = from._next.get(index);
+        if ( split == null ) {
+            int[] candidate = from._rank[index];
+            Numbah guess = new Numbah(getConfiguration());
+            number(candidate[0],guess);
+            int[] scores = score(candidate,candidate.length,guess);
+            int[][] rank = new int[_scores.size()][];
+            int[] count = new int[rank.length];
+            for ( int c = 0; c < candidate.length; ++c ) {
+                Split.add(rank,count,scores[c],candidate[c]);
+            }
+            from._next.compareAndSet(index,null,new Split(rank,count));
+            split = from._next.get(index);
+        }
+        return split;
+    }
+
+    /**
+     *  sets a number to a candidate
+     *
+     *  @param candidate the candidate, a code or a rank
+     *  @param n         the number to set
+     */
+    private void number( int candidate, Numbah n ) {
+        if ( _batch != null ) {
+            BatchScorer.number(candidate,n);
+        } else {
+            _sequence.setRank(candidate);
+            _at = candidate;
+            _sequence.copy(n);
+        }
+    }
+
+    /**
+     *  scores a guess with each of some candidates as the target
+     *
+     *  @param candidate the candidates, codes or ranks in order of rank
+     *  @param count     the number of them
+     *  @param guess     the guess
+     *
+     *  @return the index of the score in the ScoreTable of each candidate,
+     *          at the same index, in an array that's reused
+     */
+    private int[] score( int[] candidate, int count, Numbah guess ) {
+        if ( _index.length < count ) {
+            _index = new int[Math.max(count,2*_index.length)];
+        }
+        if ( _batch != null ) {
+            if ( _code.length < count ) {
+                _code = new byte[_index.length];
+            }
+            _batch.score(guess,candidate,0,count,_code);
+            for ( int c = 0; c < count; ++c ) {
+                _index[c] = _code[c] & 0xff;
+            }
+            return _index;
+        }
+        for ( int c = 0; c < count; ++c ) {
+            int rank = candidate[c];
+            if ( rank < _at || rank-_at > _STEPS ) {
+                _sequence.setRank(rank);
+            } else {
+                for ( ; _at < rank; ++_at ) {
+                    _sequence.next();
+                }
+            }
+            _at = rank;
+            _index[c] = _sequence.scoreIndex(guess);
+        }
+        return _index;
+    }
+
+    /**
+     *  backs up to state before last nextGuess()
+     */
+    public void retractScore( ) {
+        _guesses--;
+    }
+
+    /**
+     *  tests the class
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) throws Exception {
+        GeneratorTest test = new GeneratorTest() {
+            public Generator newGenerator() {
+                return new CandidateGenerator(getConfiguration());
+            }
+        };
+        test.test();
+    }
+
+}
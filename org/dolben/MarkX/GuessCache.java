@@ -0,0 +1,242 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ *  This remembers the next guess a deterministic Generator makes after a
+ *  history of guesses and their scores, so that the games that share the
+ *  history, on any thread, find the guess instead of searching for it.
+ *  A guess that isn't found costs more than one search, since the
+ *  Generator may have to make the guesses of the history again to get
+ *  to it (see CachingGenerator).
+ *  <p></p>
+ *  A history is the digits of each guess, place 0 first, followed by the
+ *  index of its score in the ScoreTable.
+ *  The guesses are kept in a table of a fixed number of slots, so the
+ *  memory it takes is bounded, in buckets of _WAYS slots chosen by hash
+ *  code, so that histories whose hash codes collide can be kept together.
+ *  A guess goes in the first empty slot of its bucket, or else replaces
+ *  the first guess there that isn't for a shorter history, which more
+ *  games share, looked up since it was put there;
+ *  if every guess there is, they lose that mark instead, and can be
+ *  replaced next time unless they're looked up again.
+ *  Every generator that shares a cache must be the same kind of generator
+ *  for the same configuration.
+ */
+class GuessCache {
+    private static final int _WAYS = 4; // the slots in a bucket
+    private final AtomicReferenceArray<Entry> _slot; // the guesses
+    private final LongAdder _hits;      // the number of guesses found
+    private final LongAdder _misses;    // the number not found
+    private final LongAdder _evictions; // the number replaced by others
+
+    /**
+     *  This is the guess after a history.
+     */
+    private static final class Entry {
+        final int[]      _history; // the history
+        final int        _hash;    // the hash code of the history
+        final int[]      _digit;   // the digits of the guess
+        volatile boolean _used;    // true iff looked up since put or passed
+
+        /**
+         *  constructs the entry for a guess
+         */
+        Entry( int[] history, int length, int hash, Numbah guess ) {
+            _history = Arrays.copyOf(history,length);
+            _hash = hash;
+            _digit = new int[guess.getConfiguration().places()];
+            for ( int place = 0; place < _digit.length; ++place ) {
+                _digit[place] = guess.getDigit(place);
+            }
+        }
+
+        /**
+         *  tests whether or not this is the entry for a history
+         */
+        boolean matches( int[] history, int length, int hash ) {
+            return _hash == hash &&
+                Arrays.equals(_history,0,_history.length,history,0,length);
+        }
+
+        /**
+         *  tests whether or not this is kept in place of the entry
+         *  for a longer history
+         */
+        boolean keptFrom( int length ) {
+            return _history.length < length && _used;
+        }
+    }
+
+    /**
+     *  constructs an empty cache
+     *
+     *  @param slots the number of guesses it can hold,
+     *  rounded up to a power of two of at least _WAYS
+     */
+    GuessCache( int slots ) {
+        _slot = new AtomicReferenceArray<Entry>(
+            Integer.highestOneBit(Math.max(_WAYS,slots)-1)<<1
+        );
+        _hits = new LongAdder();
+        _misses = new LongAdder();
+        _evictions = new LongAdder();
+    }
+
+    /**
+     *  looks up the guess after a history
+     *
+     *  @param history the history
+     *  @param length  the number of ints of it
+     *  @param guess   where the guess is put, if it's found
+     *
+     *  @return true iff the guess is found
+     */
+    boolean get( int[] history, int length, Numbah guess ) {
+        int hash = hash(history,length);
+        int bucket = bucket(hash);
+        for ( int way = 0; way < _WAYS; ++way ) {
+            Entry entry = _slot.get(bucket+way);
+            if ( entry == null ) {
+                break; // the slots of a bucket are filled in order
+            }
+            if ( entry.matches(history,length,hash) ) {
+                if ( !entry._used ) {
+                    entry._used = true;
+                }
+                for ( int place = 0; place < entry._digit.length; ++place ) {
+                    guess.setDigit(entry._digit[place],place);
+                }
+                _hits.increment();
+                return true;
+            }
+        }
+        _misses.increment();
+        return false;
+    }
+
+    /**
+     *  remembers the guess after a history, in the first empty slot of its
+     *  bucket, or in place of the first guess there that isn't for a
+     *  shorter history looked up since it was put or passed over
+     *
+     *  @param history the history
+     *  @param length  the number of ints of it
+     *  @param guess   the guess
+     */
+    void put( int[] history, int length, Numbah guess ) {
+        int hash = hash(history,length);
+        int bucket = bucket(hash);
+        Entry entry = new Entry(history,length,hash,guess);
+        int victim = -1;
+        for ( int way = 0; way < _WAYS; ++way ) {
+            Entry old = _slot.get(bucket+way);
+            if ( old == null ) {
+                if ( _slot.compareAndSet(bucket+way,null,entry) ) {
+                    return;
+                }
+                old = _slot.get(bucket+way);
+            }
+            if ( old.matches(history,length,hash) ) {
+                _slot.set(bucket+way,entry);
+                return;
+            }
+            if ( victim < 0 && !old.keptFrom(length) ) {
+                victim = bucket+way;
+            }
+        }
+        if ( victim < 0 ) {
+            for ( int way = 0; way < _WAYS; ++way ) {
+                _slot.get(bucket+way)._used = false;
+            }
+            return;
+        }
+        _evictions.increment();
+        _slot.set(victim,entry);
+    }
+
+    /**
+     *  makes the hash code of a history
+     */
+    private static int hash( int[] history, int length ) {
+        int hash = length;
+        for ( int i = 0; i < length; ++i ) {
+            hash = 31*hash+history[i];
+        }
+        return hash;
+    }
+
+    /**
+     *  finds the first slot of the bucket of a hash code
+     *  in the table of guesses
+     */
+    private int bucket( int hash ) {
+        hash ^= hash>>>16;
+        hash *= 0x45d9f3b;
+        hash ^= hash>>>16;
+        return hash & (_slot.length()-_WAYS);
+    }
+
+    /**
+     *  gets the number of guesses found
+     *
+     *  @return the number
+     */
+    long hits( ) {
+        return _hits.sum();
+    }
+
+    /**
+     *  gets the number of guesses not found
+     *
+     *  @return the number
+     */
+    long misses( ) {
+        return _misses.sum();
+    }
+
+    /**
+     *  gets the number of guesses replaced by others
+     *
+     *  @return the number
+     */
+    long evictions( ) {
+        return _evictions.sum();
+    }
+
+    /**
+     *  makes a string of the statistics of the cache
+     *
+     *  @return the string
+     */
+    public String toString( ) {
+        long hits = hits();
+        long lookups = hits+misses();
+        return hits+" hits, "+misses()+" misses ("+
+            (lookups == 0 ? 0 : 100*hits/lookups)+"% hit), "+
+            evictions()+" evictions, "+_slot.length()+" slots";
+    }
+
+}
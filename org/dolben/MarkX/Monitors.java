@@ -0,0 +1,345 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ *  This is the Monitor for each (digit, place) and their Requirements,
+ *  as part of the Monitors algorithm (see MonitorsGenerator),
+ *  kept in arrays of primitives.
+ *  </p><p>
+ *  A Requirement keeps track of a set of available digits and the number
+ *  of digits that must be picked from that set.
+ *  Each guess makes three Requirements, for the placed, misplaced and other
+ *  digits, that share two sets, of the digits in the guess and not in it;
+ *  a set is a mask with a bit for each digit, and a Requirement is the
+ *  number of digits it needs and the index of its set.
+ *  The Monitor of each (digit, place) has the index of one Requirement for
+ *  each guess, and picking a digit is OK when all of them are.
+ *  </p><p>
+ *  The Requirements for guess g are 3*g to 3*g+2 and their sets are 2*g
+ *  and 2*g+1; the Monitor of (digit, place) is cell digit*places+place and
+ *  the index of its Requirement for guess g is at cell*room+g.
+ *  </p><p>
+ *  Besides checking each pick, possible() looks ahead at the places left,
+ *  to find when the Requirements can no longer all be met, and the digits
+ *  each of those places could still have.
+ */
+class Monitors {
+    private static final int _KINDS = 3;  // the Requirements of a guess
+    private static final int _SETS = 2;   // the sets of a guess
+
+    private final int _digits;      // the number of digits
+    private final int _places;      // the number of places
+    private int       _guesses;     // the number of guesses made
+    private int       _room;        // the room for guesses
+    private long[]    _available;   // the digits available in each set
+    private int[]     _needs;       // the digits needed by each Requirement
+    private int[]     _set;         // the set of each Requirement
+    private int[]     _requirement; // the Requirements of each Monitor
+    private int[]     _guess;       // the digit in each place of each guess
+    private long[]    _domain;      // the digits each place left could have
+
+    /**
+     *  constructs Monitors with room for some guesses,
+     *  which grows as needed
+     *
+     *  @param digits  the number of digits
+     *  @param places  the number of places
+     *  @param guesses the number of guesses to make room for
+     */
+    Monitors( int digits, int places, int guesses ) {
+        _digits = digits;
+        _places = places;
+        _guesses = 0;
+        _room = guesses;
+        _available = new long[_SETS*guesses];
+        _needs = new int[_KINDS*guesses];
+        _set = new int[_KINDS*guesses];
+        _requirement = new int[digits*places*guesses];
+        _guess = new int[places*guesses];
+        _domain = new long[places];
+    }
+
+    /**
+     *  constructs a copy of some Monitors,
+     *  which can be changed without changing them
+     *
+     *  @param monitors the Monitors to copy
+     */
+    Monitors( Monitors monitors ) {
+        _digits = monitors._digits;
+        _places = monitors._places;
+        _guesses = monitors._guesses;
+        _room = monitors._room;
+        _available = monitors._available.clone();
+        _needs = monitors._needs.clone();
+        _set = monitors._set.clone();
+        _requirement = monitors._requirement.clone();
+        _guess = monitors._guess.clone();
+        _domain = new long[_places];
+    }
+
+    /**
+     *  gets the number of guesses with Requirements
+     *
+     *  @return the number of guesses
+     */
+    int guesses( ) {
+        return _guesses;
+    }
+
+    /**
+     *  adds the Requirements for a scored guess
+     *
+     *  @param guess     the digit in each place of the guess
+     *  @param placed    the number of digits of the score in the right place
+     *  @param misplaced the number of digits of the score in the wrong place
+     */
+    void addGuess( int[] guess, int placed, int misplaced ) {
+        if ( _guesses == _room ) {
+            grow(2*_room+1);
+        }
+        int g = _guesses++;
+        int in = _SETS*g;
+        int out = in+1;
+        int inReq = _KINDS*g;
+        int misReq = inReq+1;
+        int otherReq = inReq+2;
+        long mask = 0;
+        for ( int place = 0; place < _places; ++place ) {
+            mask |= 1L<<guess[place];
+            _guess[g*_places+place] = guess[place];
+        }
+        _available[in] = mask;
+        _available[out] = ~mask & Configuration.allDigits(_digits);
+        _needs[inReq] = placed;
+        _needs[misReq] = misplaced;
+        _needs[otherReq] = _places-placed-misplaced;
+        _set[inReq] = in;
+        _set[misReq] = in;
+        _set[otherReq] = out;
+        for ( int digit = 0; digit < _digits; ++digit ) {
+            for ( int place = 0; place < _places; ++place ) {
+                int r = (mask & (1L<<digit)) == 0 ? otherReq :
+                    guess[place] == digit ? inReq : misReq;
+                _requirement[(digit*_places+place)*_room+g] = r;
+            }
+        }
+    }
+
+    /**
+     *  makes room for more guesses
+     */
+    private void grow( int room ) {
+        _available = Arrays.copyOf(_available,_SETS*room);
+        _needs = Arrays.copyOf(_needs,_KINDS*room);
+        _set = Arrays.copyOf(_set,_KINDS*room);
+        _guess = Arrays.copyOf(_guess,_places*room);
+        int[] requirement = new int[_digits*_places*room];
+        for ( int cell = 0; cell < _digits*_places; ++cell ) {
+            System.arraycopy(
+                _requirement,cell*_room,requirement,cell*room,_guesses
+            );
+        }
+        _requirement = requirement;
+        _room = room;
+    }
+
+    /**
+     *  removes the Requirements of the last guess,
+     *  for backing up when guess scoring is inconsistent
+     *
+     *  @return true iff there are no Requirements left
+     */
+    boolean removeGuess( ) {
+        if ( _guesses > 0 ) {
+            --_guesses;
+        }
+        return _guesses == 0;
+    }
+
+    /**
+     *  checks that a digit could be picked in a place with a number of
+     *  places left in the guess (see pick()), without picking it
+     *
+     *  @param digit the digit to be checked
+     *  @param place the place of the digit
+     *  @param left  the number of places left for digits to be picked
+     *
+     *  @return true iff the digit could be picked
+     */
+    boolean ok( int digit, int place, int left ) {
+        int at = (digit*_places+place)*_room;
+        long bit = 1L<<digit;
+        for ( int g = at; g < at+_guesses; ++g ) {
+            int r = _requirement[g];
+            int needs = _needs[r];
+            if ( (_available[_set[r]] & bit) == 0 || needs < 1 || needs > left ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  checks that the Requirements of every guess can still be met by the
+     *  places left, finding the domain of each of those places, the digits
+     *  that all its Monitors would allow there now:
+     *  every place must have some digit, there must be enough digits among
+     *  them for all the places, and for each Requirement, enough places and
+     *  digits that could give it the digits it needs
+     *
+     *  @param open the places left, a bit for each
+     *
+     *  @return false if some Requirement can't be met
+     */
+    boolean possible( long open ) {
+        long digits = Configuration.allDigits(_digits);
+        for ( long o = open; o != 0; o &= o-1 ) {
+            _domain[Long.numberOfTrailingZeros(o)] = digits;
+        }
+        for ( int g = 0; g < _guesses; ++g ) {
+            long in = _available[_SETS*g];
+            long out = _available[_SETS*g+1];
+            long placed = _needs[_KINDS*g] > 0 ? in : 0;
+            long misplaced = _needs[_KINDS*g+1] > 0 ? in : 0;
+            long other = _needs[_KINDS*g+2] > 0 ? out : 0;
+            for ( long o = open; o != 0; o &= o-1 ) {
+                int place = Long.numberOfTrailingZeros(o);
+                long bit = 1L<<_guess[g*_places+place];
+                _domain[place] &= placed & bit | misplaced & ~bit | other;
+            }
+        }
+        long all = 0; // the digits of all the domains
+        for ( long o = open; o != 0; o &= o-1 ) {
+            long domain = _domain[Long.numberOfTrailingZeros(o)];
+            if ( domain == 0 ) {
+                return false;
+            }
+            all |= domain;
+        }
+        if ( Long.bitCount(all) < Long.bitCount(open) ) {
+            return false;
+        }
+        for ( int g = 0; g < _guesses; ++g ) {
+            long in = _available[_SETS*g];
+            long out = _available[_SETS*g+1];
+            int placed = _needs[_KINDS*g];
+            int misplaced = _needs[_KINDS*g+1];
+            int other = _needs[_KINDS*g+2];
+            if ( Long.bitCount(all & in) < placed+misplaced ||
+                    Long.bitCount(all & out) < other ) {
+                return false;
+            }
+            for ( long o = open; o != 0; o &= o-1 ) {
+                int place = Long.numberOfTrailingZeros(o);
+                long bit = 1L<<_guess[g*_places+place];
+                long domain = _domain[place];
+                if ( (domain & in & bit) != 0 ) {
+                    --placed;
+                }
+                if ( (domain & in & ~bit) != 0 ) {
+                    --misplaced;
+                }
+                if ( (domain & out) != 0 ) {
+                    --other;
+                }
+            }
+            if ( placed > 0 || misplaced > 0 || other > 0 ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  gets the domain of a place left, found by the last possible()
+     *
+     *  @param place the place
+     *
+     *  @return the digits that could be picked there, a bit for each
+     */
+    long domain( int place ) {
+        return _domain[place];
+    }
+
+    /**
+     *  checks that a digit can be picked in a place with a number of places
+     *  left in the guess, and picks it when all the Requirements of its
+     *  Monitor approve:
+     *  the digit must be in the set, the Requirement must still need digits
+     *  from it, and there must be enough places left for the digits needed
+     *
+     *  @param digit the digit to be checked
+     *  @param place the place of the digit
+     *  @param left  the number of places left for digits to be picked
+     *
+     *  @return true iff the digit was picked
+     */
+    boolean pick( int digit, int place, int left ) {
+        if ( !ok(digit,place,left) ) {
+            return false;
+        }
+        int at = (digit*_places+place)*_room;
+        long bit = 1L<<digit;
+        for ( int g = at; g < at+_guesses; ++g ) {
+            int r = _requirement[g];
+            _available[_set[r]] &= ~bit;
+            --_needs[r];
+        }
+        return true;
+    }
+
+    /**
+     *  takes back the pick of a digit in a place
+     *
+     *  @param digit the digit that is no longer picked
+     *  @param place the place of the digit
+     */
+    void unpick( int digit, int place ) {
+        int at = (digit*_places+place)*_room;
+        long bit = 1L<<digit;
+        for ( int g = at; g < at+_guesses; ++g ) {
+            int r = _requirement[g];
+            _available[_set[r]] |= bit;
+            ++_needs[r];
+        }
+    }
+
+    /**
+     *  makes a string of the last Requirement of the Monitor of a
+     *  (digit, place)
+     *
+     *  @param digit the digit
+     *  @param place the place
+     *
+     *  @return a string representing the Requirement
+     */
+    String toString( int digit, int place ) {
+        int r = _requirement[(digit*_places+place)*_room+_guesses-1];
+        return BitSet.valueOf(new long[] { _available[_set[r]] })+" "+
+            _needs[r];
+    }
+
+}
@@ -20,7 +20,18 @@
 package org.dolben.MarkX;
 
 import org.dolben.MarkN.*;
-import java.util.BitSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *  This class contains the guts of the <i>N</i> digit number game guess generator,
@@ -63,26 +74,84 @@ import java.util.BitSet;
  *    </li>
  *  </ul>
  *  <p>
+ *  The Monitors and their Requirements are kept in arrays of primitives
+ *  (see Monitors).
+ *  </p><p>
+ *  Before each place, the search looks ahead at the places left, finding
+ *  the digits that each could still have, and backtracks as soon as some
+ *  Requirement can't be met by them; only those digits are tried.
+ *  With dynamic ordering (given to the constructor, or by the
+ *  NDNG.DYNAMIC_ORDER system property), the place with the fewest digits
+ *  is filled next; the guesses are still consistent with the scores,
+ *  but may not be the same as those made in order of place.
+ *  </p><p>
+ *  In parallel mode (given to the constructor, or by the
+ *  NDNG.PARALLEL_GUESS system property), the digits of the first two places
+ *  filled are tried by separate tasks in a ForkJoinPool, each with its own
+ *  copy of the Monitors, and the guess is the one found by the first task
+ *  in order, so it's the same one the search would find in order.
+ *  </p><p>
+ *  The guesses made are kept on a trail, and the Requirements of each
+ *  score are kept in order, so backing up any number of scores just moves
+ *  back along them, without searching again.
+ *  </p><p>
+ *  candidates() goes on with the same search past the first guess,
+ *  giving every number that could have produced the scores, one at a time.
  */
 class MonitorsGenerator extends Generator {
-    private static final int _MAX_GUESSES = 10; // maximum number of guesses
-    private Monitor[][]      _monitor;  // one Monitor for each (digit, place)
-    private boolean          _first;    // true before the first guess is made
-    private Numbah           _lastGuess;// the last guess that was generated
+    private static final int _GUESSES = 10; // the initial room for guesses
+    private final int        _digits;   // the number of digits
+    private final int        _places;   // the number of places
+    private Monitors         _monitors; // the Monitor of each (digit, place)
+    private int[]            _trail;    // the digits of each guess made
+    private int              _made;     // the number of guesses made
+    private int[]            _digit;    // the digits of the last guess
+    private final boolean    _dynamic;  // true to fill constrained places first
+    private final boolean    _parallel; // true to search in parallel
+    private AtomicLong       _found;    // the key of the first task that found
+    private static final int _SPLITS = 2; // the places filled by tasks
+    
+    /**
+     *  makes a MonitorsGenerator for the default Configuration
+     */
+    MonitorsGenerator( ) {
+        this(Configuration.getDefault());
+    }
     
     /**
      *  makes one Monitor for each digit in each place and
      *  sets that the next guess is the first one
+     *
+     *  @param configuration the configuration
      */
-    MonitorsGenerator( ) {
-        _monitor =
-            new Monitor[Configuration.getDigits()][Configuration.getPlaces()];
-        for ( int digit = 0; digit < Configuration.getDigits(); ++digit ) {
-            for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-                _monitor[digit][place] = new Monitor(_MAX_GUESSES);
-            }
-        }
-        _first = true;
+    MonitorsGenerator( Configuration configuration ) {
+        this(
+            configuration,Boolean.getBoolean("NDNG.DYNAMIC_ORDER"),
+            Boolean.getBoolean("NDNG.PARALLEL_GUESS")
+        );
+    }
+    
+    /**
+     *  makes one Monitor for each digit in each place and
+     *  sets that the next guess is the first one
+     *
+     *  @param configuration the configuration
+     *  @param dynamic       true to fill the most constrained place next
+     *  @param parallel      true to search for each guess in parallel
+     */
+    MonitorsGenerator(
+        Configuration configuration, boolean dynamic, boolean parallel
+    ) {
+        super(configuration);
+        _dynamic = dynamic;
+        _parallel = parallel;
+        _found = new AtomicLong();
+        _digits = configuration.digits();
+        _places = configuration.places();
+        _monitors = new Monitors(_digits,_places,_GUESSES);
+        _trail = new int[_GUESSES*_places];
+        _made = 0;
+        _digit = new int[_places];
     }
     
     /**
@@ -91,42 +160,8 @@ class MonitorsGenerator extends Generator {
      *  @param score the score for the last guess
      */
     public void tellScore( Score score ) {
-        // make the two sets of digits: of those in the guess, and of those not
-        BitSet inGuess = new BitSet(Configuration.getDigits());
-        BitSet notInGuess = new BitSet(Configuration.getDigits());
-        
-        // make the three kinds of requirements
-        //   for "placed"    digits
-        //   for "misplaced" digits
-        //   for "other"     digits
-        Requirement inReq = new Requirement(inGuess,score.getPlaced());
-        Requirement misReq = new Requirement(inGuess,score.getMisplaced());
-        Requirement otherReq = new Requirement(
-            notInGuess,
-            Configuration.getPlaces()-score.getPlaced()-score.getMisplaced()
-        );
-        
-        // add the requirements to the monitor for each (digit, place)
-        for ( int i = 0; i < Configuration.getPlaces(); ++i ) {
-            int digit = _lastGuess.getDigit(i);
-            inGuess.set(digit);
-            for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-                if ( i == place ) {
-                    _monitor[digit][place].addRequirement(inReq);
-                } else {
-                    _monitor[digit][place].addRequirement(misReq);
-                }
-            }
-        }
-        for ( int digit = 0; digit < Configuration.getDigits(); ++digit ) {
-            if ( !inGuess.get(digit) ) {
-                notInGuess.set(digit);
-                for ( int place = 0;
-                        place < Configuration.getPlaces(); ++place ) {
-                    _monitor[digit][place].addRequirement( otherReq );
-                }
-            }
-        }
+        System.arraycopy(_trail,(_made-1)*_places,_digit,0,_places);
+        _monitors.addGuess(_digit,score.getPlaced(),score.getMisplaced());
     }
     
     /**
@@ -140,36 +175,68 @@ class MonitorsGenerator extends Generator {
      *  the previous guesses are logically inconsistent.)
      */
     public boolean nextGuess( Numbah guess ) {
-        if ( _first ) {
-            _first = false;
+        if ( _made == 0 ) {
             firstGuess(guess);
-        } else if ( !nextPlace(guess,0) ) {
-            removeRequirements();
+        } else if ( _parallel ? !parallelGuess(guess) :
+                !nextPlace(_monitors,guess,allPlaces(),0,null) ) {
+            _monitors.removeGuess();
             return false;
         }
-        _lastGuess = guess;
+        if ( _made*_places == _trail.length ) {
+            _trail = Arrays.copyOf(_trail,2*_trail.length);
+        }
+        for ( int place = 0; place < _places; ++place ) {
+            _trail[_made*_places+place] = guess.getDigit(place);
+        }
+        ++_made;
         return true;
     }
     
+    /**
+     *  gets the set of all the places
+     *
+     *  @return a bit for each place
+     */
+    private long allPlaces( ) {
+        return _places == 64 ? -1L : (1L<<_places)-1;
+    }
+    
     /**
      *  recursively generates a guess place by place.
      *  If a monitor says its OK to pick a particular digit in this place,
+     *  and the Requirements can still be met,
      *  go on to generate the digit for the next place.
      *
-     *  @param guess the number being generated
-     *  @param place the place in the number to generate here
+     *  @param monitors the Monitors
+     *  @param guess    the number being generated
+     *  @param open     the places in the number left to generate,
+     *                  a bit for each
+     *  @param key      the key of the task searching (see Branch)
+     *  @param found    the key of the first task that found a guess so far,
+     *                  or null when not searching in parallel
      *
      *  @return true iff a guess can be found
      */
-    private boolean nextPlace( Numbah guess, int place ) {
-        if ( place == Configuration.getPlaces() ) {
+    private boolean nextPlace(
+        Monitors monitors, Numbah guess, long open, long key, AtomicLong found
+    ) {
+        if ( open == 0 ) {
             return true;
         }
-        for ( int digit = 0; digit < Configuration.getDigits(); ++digit ) {
-            Monitor monitor = _monitor[digit][place];
-            if ( monitor.pick(digit,Configuration.getPlaces()-place) ) {
-                boolean done = nextPlace(guess,place+1);
-                monitor.unpick(digit);
+        if ( found != null && found.get() < key ) {
+            return false;
+        }
+        if ( !monitors.possible(open) ) {
+            return false;
+        }
+        int left = Long.bitCount(open);
+        int place = nextOpenPlace(monitors,open);
+        long rest = open & ~(1L<<place);
+        for ( long d = monitors.domain(place); d != 0; d &= d-1 ) {
+            int digit = Long.numberOfTrailingZeros(d);
+            if ( monitors.pick(digit,place,left) ) {
+                boolean done = nextPlace(monitors,guess,rest,key,found);
+                monitors.unpick(digit,place);
                 if ( done ) {
                     guess.setDigit(digit,place);
                     return true;
@@ -179,32 +246,304 @@ class MonitorsGenerator extends Generator {
         return false;
     }
     
+    /**
+     *  chooses the place to fill next, after possible() has found the
+     *  domains of the places left
+     *
+     *  @param monitors the Monitors
+     *  @param open     the places left, a bit for each
+     *
+     *  @return the place
+     */
+    private int nextOpenPlace( Monitors monitors, long open ) {
+        return _dynamic ?
+            mostConstrained(monitors,open) : Long.numberOfTrailingZeros(open);
+    }
+    
+    /**
+     *  finds the place left with the fewest digits in its domain,
+     *  the lowest of those with the fewest
+     *
+     *  @param monitors the Monitors
+     *  @param open     the places left, a bit for each
+     *
+     *  @return the place
+     */
+    private int mostConstrained( Monitors monitors, long open ) {
+        int most = -1;
+        int fewest = _digits+1;
+        for ( long o = open; o != 0; o &= o-1 ) {
+            int place = Long.numberOfTrailingZeros(o);
+            int count = Long.bitCount(monitors.domain(place));
+            if ( count < fewest ) {
+                fewest = count;
+                most = place;
+            }
+        }
+        return most;
+    }
+    
+    /**
+     *  generates a guess with tasks in parallel
+     *
+     *  @param guess the number being generated
+     *
+     *  @return true iff a guess can be found
+     */
+    private boolean parallelGuess( Numbah guess ) {
+        long keys = 1;
+        for ( int split = 0; split < _SPLITS; ++split ) {
+            keys *= _digits;
+        }
+        _found.set(Long.MAX_VALUE);
+        Numbah found = ForkJoinPool.commonPool().invoke(
+            new Branch(
+                new Monitors(_monitors),new Numbah(getConfiguration()),
+                allPlaces(),0,0,keys
+            )
+        );
+        if ( found == null ) {
+            return false;
+        }
+        found.copy(guess);
+        return true;
+    }
+    
+    /**
+     *  This is a search for a guess that starts with some digits already
+     *  picked in its own copy of the Monitors.
+     *  Until enough places are filled, it makes a Branch for each digit
+     *  of the next place; after that it searches in order.
+     *  </p><p>
+     *  Each Branch has a range of keys, in the order the search would try
+     *  them, so the first guess in order is the one with the lowest key,
+     *  and a Branch gives up when one with a lower key has found a guess.
+     */
+    private class Branch extends RecursiveTask<Numbah> {
+        public static final long serialVersionUID = 1;
+        
+        private final Monitors _monitors; // the Monitors, with digits picked
+        private final Numbah   _guess;    // the guess, with the digits picked
+        private final long     _open;     // the places left, a bit for each
+        private final int      _depth;    // the number of places filled
+        private final long     _key;      // the first key
+        private final long     _keys;     // the number of keys
+        
+        /**
+         *  constructs a search
+         */
+        Branch(
+            Monitors monitors, Numbah guess, long open, int depth,
+            long key, long keys
+        ) {
+            _monitors = monitors;
+            _guess = guess;
+            _open = open;
+            _depth = depth;
+            _key = key;
+            _keys = keys;
+        }
+        
+        /**
+         *  searches for a guess
+         *
+         *  @return the guess, or null if there isn't one
+         */
+        protected Numbah compute( ) {
+            if ( _found.get() < _key ) {
+                return null;
+            }
+            if ( _depth == _SPLITS || _open == 0 ) {
+                if ( !nextPlace(_monitors,_guess,_open,_key,_found) ) {
+                    return null;
+                }
+                _found.accumulateAndGet(_key,Math::min);
+                return _guess;
+            }
+            if ( !_monitors.possible(_open) ) {
+                return null;
+            }
+            int left = Long.bitCount(_open);
+            int place = nextOpenPlace(_monitors,_open);
+            long rest = _open & ~(1L<<place);
+            long keys = _keys/_digits;
+            List<Branch> branches = new ArrayList<Branch>();
+            for ( long d = _monitors.domain(place); d != 0; d &= d-1 ) {
+                int digit = Long.numberOfTrailingZeros(d);
+                Monitors monitors = new Monitors(_monitors);
+                if ( monitors.pick(digit,place,left) ) {
+                    Numbah guess = (Numbah)_guess.clone();
+                    guess.setDigit(digit,place);
+                    branches.add(new Branch(
+                        monitors,guess,rest,_depth+1,_key+digit*keys,keys
+                    ));
+                }
+            }
+            invokeAll(branches);
+            for ( Branch branch : branches ) {
+                Numbah guess = branch.join();
+                if ( guess != null ) {
+                    return guess;
+                }
+            }
+            return null;
+        }
+    }
+    
     /**
      *  fills in the "standard" first guess, e.g., 0123
      */
     private void firstGuess( Numbah guess ) {
-        for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
+        for ( int place = 0; place < _places; ++place ) {
             guess.setDigit(place,place);
         }
     }
     
     /**
-     *  backs up to state before last nextGuess()
+     *  backs up to state before last nextGuess(),
+     *  forgetting the last score, so the guess before is the last guess
      */
     public void retractScore( ) {
-        removeRequirements();
-        nextGuess(new Numbah());
+        _monitors.removeGuess();
+        _made = _monitors.guesses()+1;
+    }
+    
+    /**
+     *  gets the last guess made
+     *
+     *  @param guess where the last guess is put
+     *
+     *  @return false if no guess has been made
+     */
+    public boolean lastGuess( Numbah guess ) {
+        if ( _made == 0 ) {
+            return false;
+        }
+        for ( int place = 0; place < _places; ++place ) {
+            guess.setDigit(_trail[(_made-1)*_places+place],place);
+        }
+        return true;
+    }
+    
+    /**
+     *  makes an Iterator over all the numbers that could have produced the
+     *  scores so far, in the order the search finds them, each found only
+     *  when it's needed;
+     *  it has its own copy of the Monitors, so later scores don't change it
+     *
+     *  @return the Iterator
+     */
+    public Iterator<Numbah> candidates( ) {
+        return new Candidates();
+    }
+    
+    /**
+     *  makes a Stream of all the numbers that could have produced the
+     *  scores so far (see candidates())
+     *
+     *  @return the Stream
+     */
+    public Stream<Numbah> candidateStream( ) {
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                candidates(),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL
+            ),
+            false
+        );
     }
     
     /**
-     *  removes the last requirement for the monitor of each digit, place
+     *  This is the search, made to stop at each number found and go on
+     *  later, with a stack of the place, digits left to try and digit picked
+     *  at each depth instead of recursion.
      */
-    private void removeRequirements( ) {
-        for ( int digit = 0; digit < Configuration.getDigits(); ++digit ) {
-            for ( int place = 0; place < Configuration.getPlaces(); ++place ) {
-                _first = _monitor[digit][place].removeRequirement();
+    private class Candidates implements Iterator<Numbah> {
+        private final Monitors _monitors; // the copy of the Monitors
+        private final long[]   _open = new long[_places];   // the places left
+        private final int[]    _place = new int[_places];   // the place filled
+        private final long[]   _domain = new long[_places]; // the digits to try
+        private final int[]    _picked = new int[_places];  // the digit, or -1
+        private long           _used;     // the digits picked
+        private int            _depth;    // the depth being searched
+        private boolean        _ready;    // true when a number has been found
+        
+        /**
+         *  constructs the search, ready to fill the first place
+         */
+        Candidates( ) {
+            _monitors = new Monitors(MonitorsGenerator.this._monitors);
+            _open[0] = allPlaces();
+            enter(0);
+        }
+        
+        /**
+         *  chooses the place to fill at a depth, and the digits to try there
+         */
+        private void enter( int depth ) {
+            _picked[depth] = -1;
+            if ( _monitors.possible(_open[depth]) ) {
+                _place[depth] = nextOpenPlace(_monitors,_open[depth]);
+                _domain[depth] = _monitors.domain(_place[depth]);
+            } else {
+                _domain[depth] = 0;
             }
         }
+        
+        /**
+         *  searches on for the next number
+         *
+         *  @return true iff there is one
+         */
+        private boolean advance( ) {
+            while ( _depth >= 0 ) {
+                int place = _place[_depth];
+                if ( _picked[_depth] >= 0 ) {
+                    _monitors.unpick(_picked[_depth],place);
+                    _used &= ~(1L<<_picked[_depth]);
+                    _picked[_depth] = -1;
+                }
+                int left = Long.bitCount(_open[_depth]);
+                while ( _domain[_depth] != 0 && _picked[_depth] < 0 ) {
+                    int digit = Long.numberOfTrailingZeros(_domain[_depth]);
+                    _domain[_depth] &= _domain[_depth]-1;
+                    if ( (_used & (1L<<digit)) == 0 &&
+                            _monitors.pick(digit,place,left) ) {
+                        _picked[_depth] = digit;
+                        _used |= 1L<<digit;
+                    }
+                }
+                if ( _picked[_depth] < 0 ) {
+                    --_depth;
+                } else if ( _depth == _places-1 ) {
+                    return true;
+                } else {
+                    ++_depth;
+                    _open[_depth] = _open[_depth-1] & ~(1L<<place);
+                    enter(_depth);
+                }
+            }
+            return false;
+        }
+        
+        public boolean hasNext( ) {
+            if ( !_ready ) {
+                _ready = advance();
+            }
+            return _ready;
+        }
+        
+        public Numbah next( ) {
+            if ( !hasNext() ) {
+                throw new NoSuchElementException();
+            }
+            _ready = false;
+            Numbah n = new Numbah(getConfiguration());
+            for ( int depth = 0; depth < _places; ++depth ) {
+                n.setDigit(_picked[depth],_place[depth]);
+            }
+            return n;
+        }
     }
     
     /**
@@ -216,10 +555,10 @@ class MonitorsGenerator extends Generator {
         String s;
         
         s = "";
-        for ( int digit = 0; digit < Configuration.getDigits(); ++digit ) {
-            s += _monitor[digit][0];
-            for ( int place = 1; place < Configuration.getPlaces(); ++place ) {
-                s += ", "+_monitor[digit][place];
+        for ( int digit = 0; digit < _digits; ++digit ) {
+            s += _monitors.toString(digit,0);
+            for ( int place = 1; place < _places; ++place ) {
+                s += ", "+_monitors.toString(digit,place);
             }
             s += "\n";
         }
@@ -227,17 +566,146 @@ class MonitorsGenerator extends Generator {
     }
     
     /**
-     *  tests the class
+     *  plays a game against a target, then backs up to each point of it
+     *  with retractScores() and plays on from there, checking that the
+     *  last guess and each guess after are the ones made the first time
+     *
+     *  @param target the target
+     *
+     *  @return the number of guesses the game took
+     *
+     *  @exception Exception when a guess isn't the same
+     */
+    private static int retracts( Numbah target ) throws Exception {
+        Configuration configuration = target.getConfiguration();
+        MonitorsGenerator generator = new MonitorsGenerator(configuration);
+        ArrayList<String> guesses = new ArrayList<String>();
+        ArrayList<Score> scores = new ArrayList<Score>();
+        Numbah guess = new Numbah(configuration);
+        Score score;
+        do  {
+            if ( !generator.nextGuess(guess) ) {
+                throw new Exception("Generator failed on "+target);
+            }
+            score = target.score(guess);
+            generator.tellScore(score);
+            guesses.add(guess.toString());
+            scores.add(score);
+        }
+        while ( !score.correct() );
+        int n = guesses.size();
+        for ( int back = 1; back <= n; ++back ) {
+            generator.retractScores(back);
+            if ( !generator.lastGuess(guess) ||
+                    !guess.toString().equals(guesses.get(n-back)) ) {
+                throw new Exception(
+                    "last guess "+guess+" backed up "+back+" on "+target
+                );
+            }
+            for ( int i = n-back; i < n; ++i ) {
+                generator.tellScore(scores.get(i));
+                if ( i+1 < n && (!generator.nextGuess(guess) ||
+                        !guess.toString().equals(guesses.get(i+1))) ) {
+                    throw new Exception(
+                        "guess "+guess+" backed up "+back+" on "+target
+                    );
+                }
+            }
+        }
+        return n;
+    }
+    
+    /**
+     *  plays a game against a target, checking after each score that
+     *  candidateStream() and candidates() give as many numbers as there are
+     *  of all the numbers that would have produced the scores so far
+     *
+     *  @param target the target
+     *
+     *  @exception Exception when a count isn't the same
+     */
+    private static void counts( Numbah target ) throws Exception {
+        Configuration configuration = target.getConfiguration();
+        MonitorsGenerator generator = new MonitorsGenerator(configuration);
+        ArrayList<Numbah> guesses = new ArrayList<Numbah>();
+        Numbah guess = new Numbah(configuration);
+        Score score;
+        do  {
+            if ( !generator.nextGuess(guess) ) {
+                throw new Exception("Generator failed on "+target);
+            }
+            score = target.score(guess);
+            generator.tellScore(score);
+            Numbah made = new Numbah(configuration);
+            guess.copy(made);
+            guesses.add(made);
+            long consistent = 0;
+            NumberSequence n = new NumberSequence(configuration);
+            do  {
+                int i = 0;
+                while ( i < guesses.size() && n.scoreIndex(guesses.get(i)) ==
+                        target.scoreIndex(guesses.get(i)) ) {
+                    ++i;
+                }
+                if ( i == guesses.size() ) {
+                    ++consistent;
+                }
+            }
+            while ( n.next() );
+            long streamed = generator.candidateStream().count();
+            long iterated = 0;
+            for ( Iterator<Numbah> c = generator.candidates(); c.hasNext(); ) {
+                c.next();
+                ++iterated;
+            }
+            if ( streamed != consistent || iterated != consistent ) {
+                throw new Exception(
+                    streamed+" streamed and "+iterated+" iterated, not "+
+                    consistent+", after "+guesses.size()+" on "+target
+                );
+            }
+        }
+        while ( !score.correct() );
+    }
+    
+    /**
+     *  tests the class, then tests backing up in the game against
+     *  every target, and counting the candidates in the game against
+     *  every NDNG.COUNTS-th target (every 16th if not given)
      *
      *  @param arg ignored
      */
     public static void main( String[] arg ) throws Exception {
         GeneratorTest test = new GeneratorTest() {
             public Generator newGenerator() {
-                return new MonitorsGenerator();
+                return new MonitorsGenerator(getConfiguration());
             }
         };
         test.test();
+        NumberSequence target = new NumberSequence(test.getConfiguration());
+        int games = 0;
+        int backups = 0;
+        do  {
+            backups += retracts(target);
+            ++games;
+        }
+        while ( target.next() );
+        System.out.println(
+            "backed up "+backups+" times in "+games+" games, all the same"
+        );
+        int every = Integer.getInteger("NDNG.COUNTS",16);
+        target = new NumberSequence(test.getConfiguration());
+        games = 0;
+        do  {
+            if ( target.getRank() % every == 0 ) {
+                counts(target);
+                ++games;
+            }
+        }
+        while ( target.next() );
+        System.out.println(
+            "counted the candidates in "+games+" games, all the same"
+        );
     }
     
 }
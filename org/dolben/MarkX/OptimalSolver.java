@@ -0,0 +1,860 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ *  This finds an optimal strategy for the <i>N</i> digit number game:
+ *  one that takes the fewest guesses in all to find every number,
+ *  so the fewest on average, with no more than a given number of
+ *  guesses for any number.
+ *  <p></p>
+ *  It searches the whole game tree by branch and bound.
+ *  The total for some candidates is the number of them (the guess) plus
+ *  the totals for the parts the guess splits them into, and no part can
+ *  take fewer guesses than if every guess split its candidates into as
+ *  many parts as it could; that bound, summed over the parts,
+ *  orders the guesses and cuts off the ones that can't do better than the
+ *  best so far.
+ *  How many parts a guess could split some candidates into is the number
+ *  of scores, unless they have few sets of digits: a guess has some number
+ *  of digits in common with each set, and only the scores with those
+ *  numbers of digits in common can split them, or any part of them.
+ *  The candidates are tried as guesses first, and the other numbers only
+ *  when no candidate does as well as a guess that isn't one could;
+ *  the guesses are tried in order of their bounds, then of the expected
+ *  size of their parts, and only one guess of each class the Symmetry of
+ *  the guesses so far gives is tried, with the digits in none of the
+ *  candidates as alike.
+ *  <p></p>
+ *  The result for each set of three or more candidates is remembered,
+ *  the best guess and its total, or just a bound when it was cut off,
+ *  so a set reached by different guesses is solved once.
+ *  The most guesses left matters only when it's fewer than the candidates,
+ *  since every guess tried leaves fewer candidates in each part.
+ *  They're kept in a table of a fixed number of slots, by hash code,
+ *  a solution replacing the one in its slot unless that one is for
+ *  more candidates, so the memory it takes is bounded.
+ *  The parts of the guesses near the top of the tree are solved in
+ *  parallel, by tasks in a ForkJoinPool, and each guess tried there is
+ *  printed, for progress.
+ *  <p></p>
+ *  This uses the ScoreMatrix, so it's for configurations with no more than
+ *  some thousands of numbers.
+ */
+class OptimalSolver {
+    private static final int _INFINITE = Integer.MAX_VALUE/2; // no strategy
+    private static final int _DEPTH = 32;   // the most guesses allowed
+    private static final int _MEMO = 3;     // the fewest remembered
+    private static final int _SLOTS = 1<<22; // the solutions remembered
+    private static final int _PARALLEL = 2; // the depth solved in parallel
+    private static final int _INDEX = 16;   // the bits of a guess's index
+    private static final int _KEY = 42;     // the bits below a guess's bound
+
+    private final NumberTable _table;   // the numbers
+    private final ScoreTable  _scores;  // the table of indexed scores
+    private final byte[]      _score;   // the score of each pair of numbers
+    private final Configuration _configuration; // the configuration
+    private final int         _size;    // the number of numbers
+    private final int         _correct; // the index of the correct score
+    private final int         _depth;   // the most guesses for a number
+    private final int[][]     _bound;   // the least total for each count
+    private final int[][]     _other;   // the least for a guess not in them
+    private final int[]       _ways;    // the most parts for sets of digits
+    private final int[]       _reach;   // the most found in each guesses
+    private final AtomicReferenceArray<Solution> _memo; // the solved
+    private final AtomicLong  _remembered; // the number of them
+    private final AtomicLong  _nodes;   // the number of sets searched
+    private long              _start;   // when the search started
+
+    /**
+     *  This is what is known of the total for a set of candidates with a
+     *  number of guesses left: the least, with the guess that makes it,
+     *  or a bound on it.
+     */
+    private static final class Solution {
+        final int[]   _rank;  // the ranks of the candidates, in order
+        final int     _left;  // the number of guesses left
+        final int     _hash;  // the hash code of the candidates and left
+        final int     _value; // the total, or the bound
+        final boolean _exact; // true iff the value is the total
+        final int     _guess; // the rank of the best guess, if exact
+
+        /**
+         *  constructs a solution for some candidates
+         */
+        Solution(
+            int[] rank, int from, int count, int left,
+            int value, boolean exact, int guess
+        ) {
+            _rank = Arrays.copyOfRange(rank,from,from+count);
+            _left = left;
+            _hash = hash(rank,from,count,left);
+            _value = value;
+            _exact = exact;
+            _guess = guess;
+        }
+
+        /**
+         *  makes the hash code of some candidates and the guesses left
+         */
+        static int hash( int[] rank, int from, int count, int left ) {
+            int hash = left;
+            for ( int i = from; i < from+count; ++i ) {
+                hash = 31*hash+rank[i];
+            }
+            return hash;
+        }
+
+        /**
+         *  tests whether or not this is the solution for some candidates
+         */
+        boolean matches( int[] rank, int from, int count, int left, int hash ) {
+            return _hash == hash && _left == left &&
+                Arrays.equals(_rank,0,_rank.length,rank,from,from+count);
+        }
+
+        /**
+         *  picks the one of two solutions for the same candidates
+         *  that tells more
+         *
+         *  @param s the other solution
+         *
+         *  @return the solution
+         */
+        Solution better( Solution s ) {
+            if ( _exact || s._exact ) {
+                return _exact ? this : s;
+            }
+            return _value >= s._value ? this : s;
+        }
+    }
+
+    /**
+     *  This is what one thread of the search needs: the guesses so far,
+     *  their Symmetry, and arrays for each depth.
+     */
+    private final class Context {
+        final Symmetry _symmetry;  // the symmetries of the guesses
+        int[]          _path;      // the guesses so far
+        int            _depth;     // the number of them
+        int[][]        _parts;     // the candidates split by score
+        int[][]        _guess;     // the guesses to try
+        long[][]       _key;       // the bound and index of each guess
+        int[][]        _count;     // the size of each part
+        int[][]        _mark;      // the candidates marked
+        int            _stamp;     // the mark of the current set
+        final long[]   _sets;      // the sets of digits of the candidates
+        int            _largest;   // the largest part of the last bound
+        long           _spread;    // the sum of the squares of its parts
+
+        /**
+         *  constructs a context after some guesses
+         */
+        Context( int[] path, int depth ) {
+            _symmetry = new Symmetry(_configuration);
+            _path = Arrays.copyOf(path,Math.max(depth,1));
+            _depth = depth;
+            for ( int d = 0; d < depth; ++d ) {
+                _symmetry.addGuess(_table.get(path[d]));
+            }
+            _parts = new int[0][];
+            _guess = new int[0][];
+            _key = new long[0][];
+            _count = new int[0][];
+            _mark = new int[0][];
+            _sets = new long[_ways.length-1];
+        }
+
+        /**
+         *  makes sure there are arrays for the current depth
+         */
+        void room( ) {
+            if ( _depth < _parts.length ) {
+                return;
+            }
+            int depth = _depth+1;
+            _parts = Arrays.copyOf(_parts,depth);
+            _guess = Arrays.copyOf(_guess,depth);
+            _key = Arrays.copyOf(_key,depth);
+            _count = Arrays.copyOf(_count,depth);
+            _mark = Arrays.copyOf(_mark,depth);
+            _parts[_depth] = new int[_size];
+            _guess[_depth] = new int[_size];
+            _key[_depth] = new long[_size];
+            _count[_depth] = new int[_scores.size()];
+            _mark[_depth] = new int[_size];
+        }
+
+        /**
+         *  goes down the tree by a guess
+         */
+        void push( int guess ) {
+            if ( _depth == _path.length ) {
+                _path = Arrays.copyOf(_path,2*_depth);
+            }
+            _path[_depth++] = guess;
+            _symmetry.addGuess(_table.get(guess));
+        }
+
+        /**
+         *  goes back up the tree
+         */
+        void pop( ) {
+            --_depth;
+            _symmetry.removeGuess();
+        }
+    }
+
+    /**
+     *  This solves a part of a guess near the top of the tree.
+     */
+    private class Part extends RecursiveTask<Integer> {
+        public static final long serialVersionUID = 1;
+
+        private final int[] _candidate; // the candidates of the part
+        private final int   _left;      // the number of guesses left
+        private final int   _beta;      // the total that's too many
+        private final int[] _path;      // the guesses so far
+        private final int   _depth;     // the number of them
+
+        /**
+         *  constructs a task to solve some candidates
+         */
+        Part( int[] candidate, int from, int count, int left, int beta,
+              int[] path, int depth ) {
+            _candidate = Arrays.copyOfRange(candidate,from,from+count);
+            _left = left;
+            _beta = beta;
+            _path = Arrays.copyOf(path,depth);
+            _depth = depth;
+        }
+
+        /**
+         *  solves the candidates
+         *
+         *  @return the least total, or a bound when it's at least beta
+         */
+        protected Integer compute( ) {
+            return solve(
+                new Context(_path,_depth),_candidate,0,_candidate.length,
+                _left,_beta
+            );
+        }
+    }
+
+    /**
+     *  constructs a solver for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param depth         the most guesses for any number
+     *  @param memo          the number of solutions to remember,
+     *                       rounded up to a power of two
+     *
+     *  @exception IOException when the ScoreMatrix can't be had
+     */
+    OptimalSolver( Configuration configuration, int depth, int memo )
+        throws IOException {
+        _configuration = configuration;
+        _table = NumberTable.get(configuration);
+        _scores = ScoreTable.get(configuration);
+        _size = _table.size();
+        // a copy of the ScoreMatrix on the heap, a row for each guess
+        ScoreMatrix matrix = ScoreMatrix.get(configuration);
+        _score = new byte[_size*_size];
+        for ( int guess = 0; guess < _size; ++guess ) {
+            for ( int target = 0; target < _size; ++target ) {
+                _score[guess*_size+target] =
+                    (byte)matrix.scoreIndex(target,guess);
+            }
+        }
+        _correct = _scores.index(configuration.places(),0);
+        _depth = Math.min(depth,_DEPTH);
+        int places = configuration.places();
+        int outcomes = 0; // the scores a guess can split into
+        int[] common = new int[places+1]; // those with each number in common
+        for ( int index = 0; index < _scores.size(); ++index ) {
+            Score score = _scores.get(index);
+            if ( index != _correct && score.valid() ) {
+                ++outcomes;
+                ++common[score.getPlaced()+score.getMisplaced()];
+            }
+        }
+        // candidates with some sets of digits have as many numbers in
+        // common with a guess, and can get only the scores with those
+        Arrays.sort(common);
+        _ways = new int[places+2];
+        for ( int sets = 1; sets <= places+1; ++sets ) {
+            _ways[sets] = _ways[sets-1]+common[places+1-sets];
+        }
+        // at most outcomes^(d-1) can be found with the d-th guess
+        _reach = new int[_DEPTH+1];
+        long level = 1;
+        for ( int d = 1; d <= _DEPTH; ++d ) {
+            _reach[d] = (int)Math.min(_size+1,_reach[d-1]+level);
+            level = Math.min(_size,level*outcomes);
+        }
+        _bound = new int[outcomes+1][];
+        _other = new int[outcomes+1][];
+        for ( int ways = 1; ways <= outcomes; ++ways ) {
+            bounds(ways);
+        }
+        _memo = new AtomicReferenceArray<Solution>(
+            Integer.highestOneBit(Math.max(1,memo-1))<<1
+        );
+        _remembered = new AtomicLong();
+        _nodes = new AtomicLong();
+    }
+
+    /**
+     *  finds the least totals for each count of candidates when a guess
+     *  can split them into no more than some number of parts:
+     *  at most ways^(d-1) can be found with the d-th guess
+     *
+     *  @param ways the most parts
+     */
+    private void bounds( int ways ) {
+        int[] bound = new int[_size+1];
+        int[] other = new int[_size+1];
+        long reach = 1;       // the most found in d guesses
+        long level = ways;    // the most found with the next guess
+        long reachOther = 1+ways; // the most found in e guesses
+        long levelOther = Math.min(_size,(long)ways*ways);
+        for ( int count = 1, d = 1, e = 2; count <= _size; ++count ) {
+            for ( ; reach < count; ++d ) {
+                reach += level;
+                level = Math.min(_size,level*ways);
+            }
+            for ( ; reachOther-1 < count; ++e ) {
+                reachOther += levelOther;
+                levelOther = Math.min(_size,levelOther*ways);
+            }
+            bound[count] = bound[count-1]+d;
+            other[count] = other[count-1]+e;
+        }
+        _bound[ways] = bound;
+        _other[ways] = other;
+    }
+
+    /**
+     *  finds the most parts a guess could split some candidates into,
+     *  by the number of sets of digits they have
+     *
+     *  @return the most parts, an index of _bound and _other
+     */
+    private int ways(
+        Context context, int[] candidate, int from, int count
+    ) {
+        long[] set = context._sets;
+        int sets = 0;
+        for ( int c = from; c < from+count; ++c ) {
+            long mask = _table.get(candidate[c]).getMask();
+            int s = 0;
+            while ( s < sets && set[s] != mask ) {
+                ++s;
+            }
+            if ( s == sets ) {
+                if ( sets == set.length ) {
+                    return _bound.length-1;
+                }
+                set[sets++] = mask;
+            }
+        }
+        return Math.min(_bound.length-1,_ways[sets]);
+    }
+
+    /**
+     *  finds the least total number of guesses to find every number
+     *
+     *  @return the total, or _INFINITE when it can't be done in the depth
+     */
+    int solve( ) {
+        int[] all = new int[_size];
+        for ( int rank = 0; rank < _size; ++rank ) {
+            all[rank] = rank;
+        }
+        _start = System.currentTimeMillis();
+        return ForkJoinPool.commonPool().invoke(
+            new Part(all,0,_size,_depth,_INFINITE,new int[0],0)
+        );
+    }
+
+    /**
+     *  finds the least total for some candidates, if it's less than beta
+     *
+     *  @param context   the context of the search
+     *  @param candidate the ranks of the candidates, in order
+     *  @param from      the index of the first of them
+     *  @param count     the number of them
+     *  @param left      the number of guesses left
+     *  @param beta      the total that's too many
+     *
+     *  @return the least total, or a bound on it when it's at least beta
+     */
+    private int solve(
+        Context context, int[] candidate, int from, int count, int left,
+        int beta
+    ) {
+        if ( _reach[left] < count ) {
+            return _INFINITE;
+        }
+        if ( count <= 2 ) {
+            return 2*count-1;
+        }
+        left = Math.min(left,count);
+        int ways = ways(context,candidate,from,count);
+        int least = _bound[ways][count];
+        if ( least >= beta ) {
+            return least;
+        }
+        Solution known = recall(candidate,from,count,left);
+        if ( known != null ) {
+            if ( known._exact || known._value >= beta ) {
+                return known._value;
+            }
+            least = Math.max(least,known._value);
+        }
+        _nodes.incrementAndGet();
+        Solution solution = search(
+            context,candidate,from,count,left,beta,least,ways
+        );
+        remember(solution);
+        return solution._value;
+    }
+
+    /**
+     *  looks for what's remembered of some candidates
+     *
+     *  @return the solution, or null
+     */
+    private Solution recall( int[] candidate, int from, int count, int left ) {
+        int hash = Solution.hash(candidate,from,count,left);
+        Solution known = _memo.get(slot(hash));
+        return known != null && known.matches(candidate,from,count,left,hash) ?
+            known : null;
+    }
+
+    /**
+     *  remembers a solution, in place of what was in its slot unless that
+     *  was for more candidates
+     */
+    private void remember( Solution solution ) {
+        if ( solution._rank.length < _MEMO ) {
+            return;
+        }
+        int slot = slot(solution._hash);
+        Solution old = _memo.get(slot);
+        if ( old == null ) {
+            _remembered.incrementAndGet();
+        } else if ( old.matches(solution._rank,0,solution._rank.length,
+                solution._left,solution._hash) ) {
+            solution = old.better(solution);
+        } else if ( old._rank.length > solution._rank.length ) {
+            return;
+        }
+        _memo.set(slot,solution);
+    }
+
+    /**
+     *  finds the slot of a hash code in the table of solutions
+     */
+    private int slot( int hash ) {
+        hash ^= hash>>>16;
+        hash *= 0x45d9f3b;
+        hash ^= hash>>>16;
+        return hash & (_memo.length()-1);
+    }
+
+    /**
+     *  tries the guesses for some candidates
+     *
+     *  @param least the least total there could be
+     *  @param ways  the most parts a guess could split them into
+     *
+     *  @return the best guess, if its total is less than beta
+     */
+    private Solution search(
+        Context context, int[] candidate, int from, int count, int left,
+        int beta, int least, int ways
+    ) {
+        context.room();
+        int depth = context._depth;
+        int[] guess = context._guess[depth];
+        long[] key = context._key[depth];
+        int[] mark = context._mark[depth];
+        int stamp = ++context._stamp;
+        long present = 0; // the digits in some candidate
+        for ( int c = from; c < from+count; ++c ) {
+            mark[candidate[c]] = stamp;
+            present |= _table.get(candidate[c]).getMask();
+        }
+        long absent =
+            ~present & Configuration.allDigits(_configuration.digits());
+        int best = beta;
+        int bestGuess = -1;
+        int lowest = _INFINITE; // the least bound of the guesses cut off
+        // the candidates first, then the other numbers
+        for ( int phase = 0; phase < 2 && best > least; ++phase ) {
+            int floor = Math.max(least,phase == 0 ? 0 : _other[ways][count]);
+            if ( best <= floor ) {
+                lowest = Math.min(lowest,floor);
+                break;
+            }
+            int guesses = 0;
+            if ( phase == 0 ) {
+                System.arraycopy(candidate,from,guess,0,count);
+                guesses = count;
+            } else {
+                for ( int rank = 0; rank < _size; ++rank ) {
+                    if ( mark[rank] != stamp ) {
+                        guess[guesses++] = rank;
+                    }
+                }
+            }
+            if ( context._symmetry.size() > 1 || Long.bitCount(absent) > 1 ) {
+                guesses = context._symmetry.reduce(guess,0,guesses,absent);
+            }
+            int tries = 0;
+            for ( int g = 0; g < guesses; ++g ) {
+                int bound = bound(
+                    context,candidate,from,count,left,guess[g],phase == 0,
+                    best,ways
+                );
+                if ( bound >= best ) {
+                    lowest = Math.min(lowest,bound);
+                } else if ( context._largest <= 2 ) {
+                    // parts this small take just what the bound says
+                    best = bound;
+                    bestGuess = guess[g];
+                    if ( best <= floor ) {
+                        break;
+                    }
+                } else {
+                    key[tries++] =
+                        (long)bound<<_KEY | context._spread<<_INDEX | g;
+                }
+            }
+            Arrays.sort(key,0,tries);
+            for ( int t = 0; t < tries && best > least; ++t ) {
+                int bound = (int)(key[t]>>>_KEY);
+                if ( bound >= best ) {
+                    lowest = Math.min(lowest,bound);
+                    break;
+                }
+                int g = guess[(int)(key[t] & (1<<_INDEX)-1)];
+                int total = evaluate(
+                    context,candidate,from,count,left,g,best,ways
+                );
+                if ( depth < _PARALLEL ) {
+                    report(context,g,total,best);
+                }
+                if ( total < best ) {
+                    best = total;
+                    bestGuess = g;
+                } else {
+                    lowest = Math.min(lowest,total);
+                }
+            }
+        }
+        return bestGuess < 0 ?
+            new Solution(
+                candidate,from,count,left,Math.max(lowest,least),false,-1
+            ) :
+            new Solution(candidate,from,count,left,best,true,bestGuess);
+    }
+
+    /**
+     *  counts the candidates that give a guess each score
+     *
+     *  @return the counts, in the context's array for its depth
+     */
+    private int[] parts(
+        Context context, int[] candidate, int from, int count, int guess
+    ) {
+        int[] parts = context._count[context._depth];
+        Arrays.fill(parts,0);
+        int row = guess*_size;
+        for ( int c = from; c < from+count; ++c ) {
+            ++parts[_score[row+candidate[c]] & 0xff];
+        }
+        return parts;
+    }
+
+    /**
+     *  finds the least total a guess could have for some candidates,
+     *  stopping when it gets to be no less than best: it starts as if the
+     *  guess split them all apart and grows as they fall into the same parts
+     *
+     *  @param candidates true iff the guess is one of the candidates
+     *  @param ways       the most parts a guess could split them into
+     *
+     *  @return the bound, one that's at least best, or _INFINITE if the
+     *          guess is no use
+     */
+    private int bound(
+        Context context, int[] candidate, int from, int count, int left,
+        int guess, boolean candidates, int best, int ways
+    ) {
+        int[] least = _bound[ways];
+        int[] parts = context._count[context._depth];
+        Arrays.fill(parts,0);
+        int total = candidates ? 2*count-1 : 2*count;
+        int row = guess*_size;
+        for ( int c = from; c < from+count; ++c ) {
+            int s = _score[row+candidate[c]] & 0xff;
+            int part = parts[s]++;
+            if ( s != _correct ) {
+                total += least[part+1]-least[part]-1;
+                if ( total >= best ) {
+                    return total;
+                }
+            }
+        }
+        int largest = 0;
+        long spread = 0;
+        for ( int s = 0; s < parts.length; ++s ) {
+            int part = parts[s];
+            if ( part == 0 || s == _correct ) {
+                continue;
+            }
+            if ( part == count || _reach[left-1] < part ) {
+                return _INFINITE;
+            }
+            largest = Math.max(largest,part);
+            spread += (long)part*part;
+        }
+        context._largest = largest;
+        context._spread = Math.min(spread,(1L<<_KEY-_INDEX)-1);
+        return total;
+    }
+
+    /**
+     *  finds the total for a guess, if it's less than best
+     *
+     *  @param ways the most parts a guess could split them into
+     *
+     *  @return the total, or a bound on it when it's at least best
+     */
+    private int evaluate(
+        Context context, int[] candidate, int from, int count, int left,
+        int guess, int best, int ways
+    ) {
+        int[] least = _bound[ways];
+        int depth = context._depth;
+        int[] parts = parts(context,candidate,from,count,guess);
+        int[] split = context._parts[depth];
+        // the parts, largest first, after the start of each in split
+        int[] order = new int[parts.length];
+        int[] start = new int[parts.length+1];
+        int n = 0;
+        int rest = 0; // the sum of the bounds of the parts not yet solved
+        for ( int s = 0; s < parts.length; ++s ) {
+            start[s+1] = start[s]+parts[s];
+            if ( parts[s] > 0 && s != _correct ) {
+                int i = n++;
+                for ( ; i > 0 && parts[order[i-1]] < parts[s]; --i ) {
+                    order[i] = order[i-1];
+                }
+                order[i] = s;
+                rest += least[parts[s]];
+            }
+        }
+        int[] at = Arrays.copyOf(start,parts.length);
+        for ( int c = from; c < from+count; ++c ) {
+            split[at[_score[guess*_size+candidate[c]] & 0xff]++] =
+                candidate[c];
+        }
+        int total = count;
+        context.push(guess);
+        if ( depth < _PARALLEL ) {
+            Part[] task = new Part[n];
+            for ( int i = 0; i < n; ++i ) {
+                int s = order[i];
+                task[i] = new Part(
+                    split,start[s],parts[s],left-1,
+                    best-count-rest+least[parts[s]],
+                    context._path,context._depth
+                );
+            }
+            ForkJoinTask.invokeAll(task);
+            for ( int i = 0; i < n; ++i ) {
+                total = (int)Math.min(_INFINITE,(long)total+task[i].join());
+            }
+        } else {
+            for ( int i = 0; i < n && total+rest < best; ++i ) {
+                int s = order[i];
+                rest -= least[parts[s]];
+                total += solve(
+                    context,split,start[s],parts[s],left-1,best-total-rest
+                );
+            }
+            total = (int)Math.min(_INFINITE,(long)total+rest);
+        }
+        context.pop();
+        return total;
+    }
+
+    /**
+     *  prints the total for a guess near the top of the tree
+     */
+    private void report( Context context, int guess, int total, int best ) {
+        StringBuilder s = new StringBuilder();
+        for ( int d = 0; d < context._depth; ++d ) {
+            s.append(_table.get(context._path[d])).append(' ');
+        }
+        s.append(_table.get(guess)).append(total < best ? ": " : ": >= ");
+        s.append(Math.min(total,best)).append(", ").append(_nodes.get());
+        s.append(" sets, ").append(_remembered.get()).append(" remembered in ");
+        s.append(System.currentTimeMillis()-_start).append(" ms");
+        System.out.println(s);
+    }
+
+    /**
+     *  writes the strategy found by solve(), one line for each guess:
+     *  the score that led to it (but for the first), then the guess,
+     *  indented by two spaces for each guess before it,
+     *  and counts how many numbers it finds with each number of guesses
+     *
+     *  @param out   where the strategy is written, or null
+     *  @param found the number found with each number of guesses
+     */
+    void write( PrintWriter out, int[] found ) {
+        int[] all = new int[_size];
+        for ( int rank = 0; rank < _size; ++rank ) {
+            all[rank] = rank;
+        }
+        write(out,found,new Context(new int[0],0),all,0,_size,_depth,-1);
+    }
+
+    /**
+     *  writes the strategy for some candidates
+     *
+     *  @param score the index of the score that led to them, or -1
+     */
+    private void write(
+        PrintWriter out, int[] found, Context context, int[] candidate,
+        int from, int count, int left, int score
+    ) {
+        int guess = candidate[from];
+        if ( count > 2 ) {
+            left = Math.min(left,count);
+            Solution solution = recall(candidate,from,count,left);
+            if ( solution == null || !solution._exact ) {
+                int ways = ways(context,candidate,from,count);
+                solution = search(
+                    context,candidate,from,count,left,_INFINITE,
+                    _bound[ways][count],ways
+                );
+            }
+            guess = solution._guess;
+        }
+        int depth = context._depth;
+        if ( out != null ) {
+            StringBuilder s = new StringBuilder();
+            for ( int d = 0; d < depth; ++d ) {
+                s.append("  ");
+            }
+            if ( score >= 0 ) {
+                s.append(_scores.get(score)).append(' ');
+            }
+            out.println(s.append(_table.get(guess)));
+        }
+        context.room();
+        int[] parts = parts(context,candidate,from,count,guess);
+        int[] start = new int[parts.length+1];
+        for ( int s = 0; s < parts.length; ++s ) {
+            start[s+1] = start[s]+parts[s];
+        }
+        int[] split = new int[count];
+        int[] at = Arrays.copyOf(start,parts.length);
+        for ( int c = from; c < from+count; ++c ) {
+            split[at[_score[guess*_size+candidate[c]] & 0xff]++] =
+                candidate[c];
+        }
+        if ( parts[_correct] > 0 ) {
+            ++found[depth+1];
+        }
+        context.push(guess);
+        for ( int s = 0; s < parts.length; ++s ) {
+            if ( parts[s] > 0 && s != _correct ) {
+                write(out,found,context,split,start[s],parts[s],left-1,s);
+            }
+        }
+        context.pop();
+    }
+
+    /**
+     *  finds and prints an optimal strategy for the configuration given
+     *  by the NDNG.DIGITS and NDNG.PLACES system properties,
+     *  with no more guesses for any number than the NDNG.DEPTH system
+     *  property gives, if it's given, remembering as many solutions as the
+     *  NDNG.MEMO system property gives (4194304 if not given),
+     *  writing the strategy to a file when its name is given
+     *
+     *  @param arg an optional file name
+     */
+    public static void main( String[] arg ) throws Exception {
+        Configuration.setPlaces(System.getProperty("NDNG.PLACES"));
+        Configuration.setDigits(System.getProperty("NDNG.DIGITS"));
+        Configuration configuration = Configuration.getDefault();
+        int depth = Integer.getInteger("NDNG.DEPTH",_DEPTH);
+        int memo = Integer.getInteger("NDNG.MEMO",_SLOTS);
+        OptimalSolver solver = new OptimalSolver(configuration,depth,memo);
+        System.out.println(configuration+", depth "+solver._depth);
+        int total = solver.solve();
+        if ( total >= _INFINITE ) {
+            System.out.println("no strategy in "+solver._depth+" guesses");
+            return;
+        }
+        int[] found = new int[solver._depth+1];
+        PrintWriter out = arg.length > 0 ?
+            new PrintWriter(new File(arg[0]),"UTF-8") : null;
+        try {
+            solver.write(out,found);
+        } finally {
+            if ( out != null ) {
+                out.close();
+            }
+        }
+        int most = 0;
+        for ( int d = 1; d < found.length; ++d ) {
+            if ( found[d] > 0 ) {
+                most = d;
+                System.out.println(d+" guesses: "+found[d]);
+            }
+        }
+        System.out.println(
+            "total "+total+", average "+(double)total/solver._size+
+            ", most "+most+", "+solver._nodes.get()+" sets in "+
+            (System.currentTimeMillis()-solver._start)+" ms"
+        );
+    }
+
+}
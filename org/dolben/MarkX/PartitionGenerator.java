@@ -0,0 +1,420 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ *  This class contains the <i>N</i> digit number game guess Generator
+ *  that picks the guess which best partitions the candidates.
+ *  <p></p>
+ *  It keeps the candidates, the numbers that could have given all the
+ *  scores so far, and for each number it could guess, counts how many
+ *  candidates would give it each score; those counts are the sizes of the
+ *  parts the guess would split the candidates into.
+ *  The guess picked has the best parts by the Criterion it's given:
+ *  the smallest largest part, the smallest expected part, the most
+ *  information (entropy), or the most parts.
+ *  Ties go to a guess that's a candidate, then to the lowest rank.
+ *  <p></p>
+ *  The guesses are evaluated by tasks in a ForkJoinPool, counting in an
+ *  array each thread keeps, until a time budget for the turn
+ *  (in milliseconds, from the NDNG.BUDGET system property, 1000 if not
+ *  given) runs out; then the best guess so far is picked.
+ *  The candidates are all evaluated before any other number is,
+ *  so a guess that isn't a candidate is only picked when every candidate
+ *  has been evaluated.
+ *  Which guesses get evaluated when the budget runs out depends on the
+ *  clock and the threads, so the generator is deterministic (makes the
+ *  same guesses for the same scores, as a TreeCompiler or a CachingGenerator
+ *  needs) only when the budget isn't hit.
+ *  The first guess is the first number, since all are the same before any
+ *  score.
+ *  Only one guess of each class that a Symmetry of the guesses so far maps
+ *  to each other is evaluated, the one of lowest rank, since they all
+ *  split the candidates the same way.
+ *  <p></p>
+ *  This keeps every number in a NumberTable, so it's for configurations
+ *  with no more than some thousands of numbers.
+ */
+class PartitionGenerator extends Generator {
+    /**
+     *  This is a way to measure how good the parts of a guess are,
+     *  as a value that's smaller for better parts.
+     */
+    enum Criterion {
+        /** the size of the largest part */
+        WORST {
+            double value( int[] count, int scores, int total ) {
+                int most = 0;
+                for ( int i = 0; i < scores; ++i ) {
+                    most = Math.max(most,count[i]);
+                }
+                return most;
+            }
+        },
+        /** the expected size of the part a candidate is in */
+        EXPECTED {
+            double value( int[] count, int scores, int total ) {
+                long sum = 0;
+                for ( int i = 0; i < scores; ++i ) {
+                    sum += (long)count[i]*count[i];
+                }
+                return (double)sum/total;
+            }
+        },
+        /** less the information the score gives (its entropy) */
+        ENTROPY {
+            double value( int[] count, int scores, int total ) {
+                double sum = 0;
+                for ( int i = 0; i < scores; ++i ) {
+                    if ( count[i] > 1 ) {
+                        sum += count[i]*Math.log(count[i]);
+                    }
+                }
+                return sum/total-Math.log(total);
+            }
+        },
+        /** less the number of parts */
+        PARTS {
+            double value( int[] count, int scores, int total ) {
+                int parts = 0;
+                for ( int i = 0; i < scores; ++i ) {
+                    if ( count[i] > 0 ) {
+                        ++parts;
+                    }
+                }
+                return -parts;
+            }
+        };
+
+        /**
+         *  measures the parts of a guess
+         *
+         *  @param count  the size of the part for each score
+         *  @param scores the number of scores
+         *  @param total  the number of candidates
+         *
+         *  @return the value, smaller for better parts
+         */
+        abstract double value( int[] count, int scores, int total );
+    }
+
+    private static final int _GUESSES = 10; // the initial room for guesses
+    private static final int _SPLIT = 64;   // the most guesses per task
+    private static final ThreadLocal<int[]> _PARTS = // each thread's counts
+        ThreadLocal.withInitial(() -> new int[0]);
+
+    private final Criterion  _criterion;  // how the parts are measured
+    private final long       _budget;     // the time for a turn, in ns
+    private final NumberTable _table;     // the numbers
+    private final ScoreTable _scores;     // the table of indexed scores
+    private int              _guesses;    // the number of guesses made
+    private int[][]          _candidate;  // the candidates before each score
+    private int[]            _count;      // the number of them
+    private int[]            _guess;      // the rank of each guess made
+    private int[]            _pool;       // the ranks of the guesses to try
+    private boolean[]        _isCandidate;// true for each candidate's rank
+    private final Symmetry   _symmetry;   // the symmetries of the guesses
+    private long             _deadline;   // when the turn's time runs out
+
+    /**
+     *  constructs a PartitionGenerator for the default Configuration
+     *  that picks the guess with the smallest largest part
+     */
+    PartitionGenerator( ) {
+        this(Configuration.getDefault(),Criterion.WORST);
+    }
+
+    /**
+     *  constructs a PartitionGenerator for a configuration
+     *  with the time budget given by the NDNG.BUDGET system property
+     *
+     *  @param configuration the configuration
+     *  @param criterion     how the parts are measured
+     */
+    PartitionGenerator( Configuration configuration, Criterion criterion ) {
+        this(configuration,criterion,Long.getLong("NDNG.BUDGET",1000));
+    }
+
+    /**
+     *  constructs a PartitionGenerator for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param criterion     how the parts are measured
+     *  @param budget        the time for a turn, in milliseconds
+     */
+    PartitionGenerator(
+        Configuration configuration, Criterion criterion, long budget
+    ) {
+        super(configuration);
+        _criterion = criterion;
+        _budget = budget*1000000;
+        _table = NumberTable.get(configuration);
+        _scores = ScoreTable.get(configuration);
+        int size = _table.size();
+        _candidate = new int[_GUESSES+1][];
+        _candidate[0] = new int[size];
+        for ( int rank = 0; rank < size; ++rank ) {
+            _candidate[0][rank] = rank;
+        }
+        _count = new int[_GUESSES+1];
+        _count[0] = size;
+        _guess = new int[_GUESSES];
+        _pool = new int[size];
+        _isCandidate = new boolean[size];
+        _symmetry = new Symmetry(configuration);
+        _guesses = 0;
+    }
+
+    /**
+     *  generates the next guess
+     *
+     *  @param guess the next generated guess
+     *
+     *  @return true iff there is a next guess.
+     *
+     *  (It won't be possible to generate a guess if scores given for
+     *  the previous guesses are logically inconsistent.)
+     */
+    public boolean nextGuess( Numbah guess ) {
+        int count = _count[_guesses];
+        if ( count == 0 ) {
+            return false;
+        }
+        if ( _guesses == _guess.length ) {
+            _guess = Arrays.copyOf(_guess,2*_guesses);
+            _candidate = Arrays.copyOf(_candidate,2*_guesses+1);
+            _count = Arrays.copyOf(_count,2*_guesses+1);
+        }
+        int rank;
+        if ( _guesses == 0 || count <= 2 ) {
+            rank = _candidate[_guesses][0];
+        } else {
+            rank = best(_candidate[_guesses],count);
+        }
+        _guess[_guesses] = rank;
+        _table.get(rank).copy(guess);
+        ++_guesses;
+        return true;
+    }
+
+    /**
+     *  finds the best guess for some candidates
+     *
+     *  @param candidate the ranks of the candidates
+     *  @param count     the number of them
+     *
+     *  @return the rank of the best guess
+     */
+    private int best( int[] candidate, int count ) {
+        // the candidates first, then the rest in order
+        Arrays.fill(_isCandidate,false);
+        for ( int i = 0; i < count; ++i ) {
+            _isCandidate[candidate[i]] = true;
+        }
+        System.arraycopy(candidate,0,_pool,0,count);
+        int n = count;
+        for ( int rank = 0; rank < _pool.length; ++rank ) {
+            if ( !_isCandidate[rank] ) {
+                _pool[n++] = rank;
+            }
+        }
+        // just one guess of each class, candidates staying candidates
+        while ( _symmetry.guesses() > _guesses ) {
+            _symmetry.removeGuess();
+        }
+        while ( _symmetry.guesses() < _guesses ) {
+            _symmetry.addGuess(_table.get(_guess[_symmetry.guesses()]));
+        }
+        int candidates = _symmetry.reduce(_pool,0,count);
+        System.arraycopy(_pool,count,_pool,candidates,n-count);
+        n = _symmetry.reduce(_pool,candidates,candidates+n-count);
+        _deadline = System.nanoTime()+_budget;
+        Choice choice = ForkJoinPool.commonPool().invoke(
+            new Evaluation(candidate,count,candidates,0,candidates)
+        );
+        if ( System.nanoTime() <= _deadline ) {
+            choice = choice.better(
+                ForkJoinPool.commonPool().invoke(
+                    new Evaluation(candidate,count,candidates,candidates,n)
+                )
+            );
+        }
+        return choice._rank;
+    }
+
+    /**
+     *  This is the best guess of some, by value, then by being a candidate,
+     *  then by rank.
+     */
+    private static class Choice {
+        final double  _value;     // the value of the parts of the guess
+        final boolean _candidate; // true iff the guess is a candidate
+        final int     _rank;      // the rank of the guess
+
+        /**
+         *  constructs a choice
+         */
+        Choice( double value, boolean candidate, int rank ) {
+            _value = value;
+            _candidate = candidate;
+            _rank = rank;
+        }
+
+        /**
+         *  picks the better of this choice and another
+         *
+         *  @param c the other choice, or null
+         *
+         *  @return the better choice
+         */
+        Choice better( Choice c ) {
+            if ( c == null ) {
+                return this;
+            }
+            if ( _value != c._value ) {
+                return _value < c._value ? this : c;
+            }
+            if ( _candidate != c._candidate ) {
+                return _candidate ? this : c;
+            }
+            return _rank < c._rank ? this : c;
+        }
+    }
+
+    /**
+     *  This evaluates a range of the guesses to try, splitting it in half
+     *  until it's small, and gives the best one evaluated in time.
+     */
+    private class Evaluation extends RecursiveTask<Choice> {
+        public static final long serialVersionUID = 1;
+
+        private final int[] _candidate;  // the ranks of the candidates
+        private final int   _count;      // the number of them
+        private final int   _candidates; // the guesses that are candidates
+        private final int   _from;       // the first guess to try
+        private final int   _to;         // one more than the last
+
+        /**
+         *  constructs an evaluation of a range of guesses
+         */
+        Evaluation( int[] candidate, int count, int candidates, int from, int to ) {
+            _candidate = candidate;
+            _count = count;
+            _candidates = candidates;
+            _from = from;
+            _to = to;
+        }
+
+        /**
+         *  evaluates the guesses
+         *
+         *  @return the best of them, or null if there wasn't time for any
+         */
+        protected Choice compute( ) {
+            if ( _to-_from > _SPLIT ) {
+                int middle = (_from+_to) >>> 1;
+                Evaluation after = new Evaluation(
+                    _candidate,_count,_candidates,middle,_to
+                );
+                after.fork();
+                Choice choice = new Evaluation(
+                    _candidate,_count,_candidates,_from,middle
+                ).compute();
+                Choice other = after.join();
+                return choice == null ? other : choice.better(other);
+            }
+            int scores = _scores.size();
+            int[] parts = _PARTS.get(); // the size of each part
+            if ( parts.length < scores ) {
+                parts = new int[scores];
+                _PARTS.set(parts);
+            }
+            Choice best = null;
+            for ( int i = _from; i < _to; ++i ) {
+                if ( System.nanoTime() > _deadline && i > 0 ) {
+                    break;
+                }
+                Numbah guess = _table.get(_pool[i]);
+                Arrays.fill(parts,0);
+                for ( int c = 0; c < _count; ++c ) {
+                    ++parts[_table.get(_candidate[c]).scoreIndex(guess)];
+                }
+                best = new Choice(
+                    _criterion.value(parts,scores,_count),i < _candidates,
+                    _pool[i]
+                ).better(best);
+            }
+            return best;
+        }
+    }
+
+    /**
+     *  is given a score for the last guess
+     *
+     *  @param score the score for the last guess
+     */
+    public void tellScore( Score score ) {
+        int[] from = _candidate[_guesses-1];
+        int count = _count[_guesses-1];
+        if ( _candidate[_guesses] == null ) {
+            _candidate[_guesses] = new int[_table.size()];
+        }
+        int[] to = _candidate[_guesses];
+        Numbah guess = _table.get(_guess[_guesses-1]);
+        int index = _scores.index(score);
+        int kept = 0;
+        for ( int c = 0; c < count; ++c ) {
+            if ( _table.get(from[c]).scoreIndex(guess) == index ) {
+                to[kept++] = from[c];
+            }
+        }
+        _count[_guesses] = kept;
+    }
+
+    /**
+     *  backs up to state before last nextGuess()
+     */
+    public void retractScore( ) {
+        _guesses--;
+    }
+
+    /**
+     *  tests the class, with the Criterion named by the NDNG.CRITERION
+     *  system property (WORST if not given)
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) throws Exception {
+        final Criterion criterion =
+            Criterion.valueOf(System.getProperty("NDNG.CRITERION","WORST"));
+        GeneratorTest test = new GeneratorTest() {
+            public Generator newGenerator() {
+                return new PartitionGenerator(getConfiguration(),criterion);
+            }
+        };
+        test.test();
+    }
+
+}
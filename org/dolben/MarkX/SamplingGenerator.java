@@ -0,0 +1,373 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+
+/**
+ *  This class contains the <i>N</i> digit number game guess Generator
+ *  for configurations with too many numbers to keep or search through:
+ *  it picks the guess which best partitions a sample of the candidates.
+ *  <p></p>
+ *  Each candidate in the sample is found by a search of the Monitors like
+ *  that of a MonitorsGenerator, filling the most constrained place next,
+ *  but trying the digits of each place in a pseudorandom order.
+ *  A search gives up after some number of picks and starts over, with
+ *  twice as many, so no one sample takes too long;
+ *  one that finishes without finding a candidate shows there isn't one.
+ *  The sampled candidates, and as many pseudorandom numbers, are then tried
+ *  as guesses against the sample, and the one with the best parts by
+ *  a PartitionGenerator.Criterion is picked, ties going to a candidate.
+ *  <p></p>
+ *  Sampling stops at half of a time budget for the turn (in milliseconds,
+ *  from the NDNG.BUDGET system property, 1000 if not given), or at the
+ *  whole budget if no candidate has been found yet, and the guesses are
+ *  tried until the budget runs out, so a turn takes little more than the
+ *  budget, however many numbers there are.
+ *  If no candidate is found in the budget, nor shown not to be, the guess
+ *  is a pseudorandom number, which still gets a score.
+ */
+class SamplingGenerator extends Generator {
+    private static final int _GUESSES = 10;  // the initial room for guesses
+    private static final int _SAMPLES = 256; // the most candidates sampled
+    private static final int _OTHERS = 256;  // the other numbers tried
+    private static final int _PICKS = 1<<10; // the first picks of a search
+    private static final int _CHECK = 0xff;  // the picks between clock checks
+
+    private final PartitionGenerator.Criterion _criterion; // how parts rate
+    private final long         _budget;   // the time for a turn, in ns
+    private final RandomSource _random;   // the source of pseudorandom ints
+    private final ScoreTable   _scores;   // the table of indexed scores
+    private final int          _digits;   // the number of digits
+    private final int          _places;   // the number of places
+    private Monitors           _monitors; // the Monitor of each (digit, place)
+    private int[]              _trail;    // the digits of each guess made
+    private int                _made;     // the number of guesses made
+    private final int[]        _digit;    // the digits of the last guess
+    private final Numbah[]     _sample;   // the candidates sampled
+    private int                _samples;  // the number of them
+    private final Numbah[]     _other;    // the other numbers tried
+    private final int[]        _otherDigit; // the digits of the other numbers
+    private final int[]        _count;    // the size of each part of a guess
+    private int                _picks;    // the picks left for a search
+    private boolean            _cut;      // true iff a search gave up
+    private long               _deadline; // when a search must give up
+
+    /**
+     *  constructs a SamplingGenerator for the default Configuration
+     *  that picks the guess with the smallest expected part
+     */
+    SamplingGenerator( ) {
+        this(Configuration.getDefault(),PartitionGenerator.Criterion.EXPECTED);
+    }
+
+    /**
+     *  constructs a SamplingGenerator for a configuration
+     *  with the time budget given by the NDNG.BUDGET system property
+     *  and the shared source of pseudorandom ints
+     *
+     *  @param configuration the configuration
+     *  @param criterion     how the parts are measured
+     */
+    SamplingGenerator(
+        Configuration configuration, PartitionGenerator.Criterion criterion
+    ) {
+        this(
+            configuration,criterion,Long.getLong("NDNG.BUDGET",1000),
+            RandomSource.get()
+        );
+    }
+
+    /**
+     *  constructs a SamplingGenerator for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param criterion     how the parts are measured
+     *  @param budget        the time for a turn, in milliseconds
+     *  @param random        the source of pseudorandom ints
+     */
+    SamplingGenerator(
+        Configuration configuration, PartitionGenerator.Criterion criterion,
+        long budget, RandomSource random
+    ) {
+        super(configuration);
+        _criterion = criterion;
+        _budget = budget*1000000;
+        _random = random;
+        _scores = ScoreTable.get(configuration);
+        _digits = configuration.digits();
+        _places = configuration.places();
+        _monitors = new Monitors(_digits,_places,_GUESSES);
+        _trail = new int[_GUESSES*_places];
+        _made = 0;
+        _digit = new int[_places];
+        _sample = new Numbah[_SAMPLES];
+        _other = new Numbah[_OTHERS];
+        for ( int i = 0; i < _OTHERS; ++i ) {
+            _other[i] = new Numbah(configuration);
+        }
+        _otherDigit = new int[_OTHERS*_places];
+        _count = new int[_scores.size()];
+    }
+
+    /**
+     *  is given a score for the last guess
+     *
+     *  @param score the score for the last guess
+     */
+    public void tellScore( Score score ) {
+        System.arraycopy(_trail,(_made-1)*_places,_digit,0,_places);
+        _monitors.addGuess(_digit,score.getPlaced(),score.getMisplaced());
+    }
+
+    /**
+     *  generates the next guess
+     *
+     *  @param guess the next generated guess
+     *
+     *  @return true iff there is a next guess.
+     *
+     *  (It won't be possible to generate a guess if scores given for
+     *  the previous guesses are logically inconsistent.)
+     */
+    public boolean nextGuess( Numbah guess ) {
+        if ( _made == 0 ) {
+            for ( int place = 0; place < _places; ++place ) {
+                guess.setDigit(place,place);
+            }
+        } else if ( !choose(guess) ) {
+            _monitors.removeGuess();
+            return false;
+        }
+        if ( _made*_places == _trail.length ) {
+            _trail = Arrays.copyOf(_trail,2*_trail.length);
+        }
+        for ( int place = 0; place < _places; ++place ) {
+            _trail[_made*_places+place] = guess.getDigit(place);
+        }
+        ++_made;
+        return true;
+    }
+
+    /**
+     *  samples the candidates and picks the guess that best partitions them
+     *
+     *  @param guess where the guess is put
+     *
+     *  @return false if there are no candidates
+     */
+    private boolean choose( Numbah guess ) {
+        long start = System.nanoTime();
+        long end = start+_budget;
+        if ( !sample(start+_budget/2,end) ) {
+            return false;
+        }
+        _random.targets(getConfiguration(),_otherDigit,_OTHERS);
+        for ( int i = 0; i < _OTHERS; ++i ) {
+            for ( int place = 0; place < _places; ++place ) {
+                _other[i].setDigit(_otherDigit[i*_places+place],place);
+            }
+        }
+        if ( _samples == 0 ) {
+            _other[0].copy(guess);
+            return true;
+        }
+        Numbah best = _sample[0];
+        double least = Double.MAX_VALUE;
+        for ( int i = 0; i < _samples+_OTHERS; ++i ) {
+            if ( i > 0 && System.nanoTime() > end ) {
+                break;
+            }
+            Numbah n = i < _samples ? _sample[i] : _other[i-_samples];
+            Arrays.fill(_count,0);
+            for ( int c = 0; c < _samples; ++c ) {
+                ++_count[_sample[c].scoreIndex(n)];
+            }
+            double value = _criterion.value(_count,_count.length,_samples);
+            if ( value < least ) {
+                least = value;
+                best = n;
+            }
+        }
+        best.copy(guess);
+        return true;
+    }
+
+    /**
+     *  samples the candidates, until there are enough or the time is up
+     *
+     *  @param half when to stop if some have been found
+     *  @param end  when to stop if none have been
+     *
+     *  @return false if there are none
+     */
+    private boolean sample( long half, long end ) {
+        _samples = 0;
+        int picks = _PICKS;
+        for ( int tries = 0; tries < 2*_SAMPLES && _samples < _SAMPLES; ) {
+            _deadline = _samples > 0 ? half : end;
+            if ( System.nanoTime() > _deadline ) {
+                break;
+            }
+            if ( _sample[_samples] == null ) {
+                _sample[_samples] = new Numbah(getConfiguration());
+            }
+            _picks = picks;
+            _cut = false;
+            if ( nextPlace(_sample[_samples],allPlaces()) ) {
+                ++tries;
+                if ( !sampled(_sample[_samples]) ) {
+                    ++_samples;
+                }
+            } else if ( _cut ) {
+                picks = picks > Integer.MAX_VALUE/2 ? picks : 2*picks;
+            } else {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  tests whether or not a number is already in the sample
+     */
+    private boolean sampled( Numbah n ) {
+        for ( int i = 0; i < _samples; ++i ) {
+            int place = 0;
+            while ( place < _places &&
+                    _sample[i].getDigit(place) == n.getDigit(place) ) {
+                ++place;
+            }
+            if ( place == _places ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  gets the set of all the places
+     *
+     *  @return a bit for each place
+     */
+    private long allPlaces( ) {
+        return _places == 64 ? -1L : (1L<<_places)-1;
+    }
+
+    /**
+     *  recursively generates a candidate place by place, trying the digits
+     *  the Monitors allow in a pseudorandom order,
+     *  until the picks for the search run out
+     *
+     *  @param n    the number being generated
+     *  @param open the places in the number left to generate, a bit for each
+     *
+     *  @return true iff a candidate is found
+     */
+    private boolean nextPlace( Numbah n, long open ) {
+        if ( open == 0 ) {
+            return true;
+        }
+        if ( !_monitors.possible(open) ) {
+            return false;
+        }
+        int left = Long.bitCount(open);
+        int place = mostConstrained(open);
+        long rest = open & ~(1L<<place);
+        for ( long d = _monitors.domain(place); d != 0; ) {
+            if ( --_picks < 0 || ((_picks & _CHECK) == 0 &&
+                    System.nanoTime() > _deadline) ) {
+                _cut = true;
+                return false;
+            }
+            long bit = d;
+            for ( int k = _random.nextInt(Long.bitCount(d)); k > 0; --k ) {
+                bit &= bit-1;
+            }
+            bit &= -bit;
+            d &= ~bit;
+            int digit = Long.numberOfTrailingZeros(bit);
+            if ( _monitors.pick(digit,place,left) ) {
+                boolean done = nextPlace(n,rest);
+                _monitors.unpick(digit,place);
+                if ( done ) {
+                    n.setDigit(digit,place);
+                    return true;
+                }
+                if ( _cut ) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     *  finds the place left with the fewest digits in its domain,
+     *  the lowest of those with the fewest
+     *
+     *  @param open the places left, a bit for each
+     *
+     *  @return the place
+     */
+    private int mostConstrained( long open ) {
+        int most = -1;
+        int fewest = _digits+1;
+        for ( long o = open; o != 0; o &= o-1 ) {
+            int place = Long.numberOfTrailingZeros(o);
+            int count = Long.bitCount(_monitors.domain(place));
+            if ( count < fewest ) {
+                fewest = count;
+                most = place;
+            }
+        }
+        return most;
+    }
+
+    /**
+     *  backs up to state before last nextGuess(),
+     *  forgetting the last score, so the guess before is the last guess
+     */
+    public void retractScore( ) {
+        _monitors.removeGuess();
+        _made = _monitors.guesses()+1;
+    }
+
+    /**
+     *  tests the class, with the Criterion named by the NDNG.CRITERION
+     *  system property (EXPECTED if not given)
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) throws Exception {
+        final PartitionGenerator.Criterion criterion =
+            PartitionGenerator.Criterion.valueOf(
+                System.getProperty("NDNG.CRITERION","EXPECTED")
+            );
+        GeneratorTest test = new GeneratorTest() {
+            public Generator newGenerator() {
+                return new SamplingGenerator(getConfiguration(),criterion);
+            }
+        };
+        test.test();
+    }
+
+}
@@ -0,0 +1,384 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.util.Arrays;
+
+/**
+ *  This keeps the symmetries of the guesses made so far in a game:
+ *  the maps of places and digits (see NumberScrambler) that map every
+ *  guess to itself.
+ *  Such a map doesn't change the score any guess gives any number,
+ *  so two numbers that one maps to the other are the same as guesses:
+ *  they split the candidates into parts of the same sizes.
+ *  reduce() keeps just one of each such class of numbers.
+ *  <p></p>
+ *  A digit in no guess can be mapped to any other such digit, so those
+ *  are handled by relabeling them in order; so can digits known to be in
+ *  none of the candidates, when they're given.
+ *  The map of each digit in some guess follows from the map of places,
+ *  so a symmetry is kept as a map of places and the map of digits it
+ *  forces, one for each guess: there's an array of them before each guess,
+ *  each one those of the array before it that also keep its guess.
+ *  <p></p>
+ *  All the maps of places are tried before the first guess, up to
+ *  _MAPS of them; with more places than that allows, the symmetries are
+ *  just those with the first maps, which reduce less but are still right.
+ *  <p></p>
+ *  This uses the NumberTable, so it's for configurations with no more than
+ *  some thousands of numbers.
+ */
+class Symmetry {
+    private static final int _MAPS = 1<<15; // the most maps of places
+    private static final int _GUESSES = 10; // the initial room for guesses
+
+    private final int         _digits;  // the number of digits
+    private final int         _places;  // the number of places
+    private final int         _width;   // the ints of a symmetry
+    private final NumberTable _table;   // the numbers
+    private int               _guesses; // the number of guesses kept
+    private int[][]           _map;     // the symmetries before each guess
+    private int[]             _count;   // the number of them
+    private long[]            _used;    // the digits in the guesses before
+    private final Numbah      _mapped;  // a number being mapped
+    private final int[]       _digit;   // the digit mapped to each place
+    private final int[]       _free;    // the relabel of each digit
+    private int[]             _seen;    // the mark of each class seen
+    private int               _mark;    // the mark of this reduce()
+
+    /**
+     *  constructs the Symmetry of no guesses for a configuration
+     *
+     *  @param configuration the configuration
+     */
+    Symmetry( Configuration configuration ) {
+        _digits = configuration.digits();
+        _places = configuration.places();
+        _width = _places+_digits;
+        _table = NumberTable.get(configuration);
+        _map = new int[_GUESSES+1][];
+        _count = new int[_GUESSES+1];
+        _used = new long[_GUESSES+1];
+        _map[0] = allMaps();
+        _count[0] = _map[0].length/_width;
+        _guesses = 0;
+        _mapped = new Numbah(configuration);
+        _digit = new int[_places];
+        _free = new int[_digits];
+        _seen = new int[_table.size()];
+    }
+
+    /**
+     *  makes the maps of places, in order, the first being the identity,
+     *  with no digits mapped
+     *
+     *  @return the symmetries
+     */
+    private int[] allMaps( ) {
+        int count = 1;
+        for ( int n = 2; n <= _places && count < _MAPS; ++n ) {
+            count = Math.min(_MAPS,count*n);
+        }
+        int[] map = new int[count*_width];
+        Arrays.fill(map,-1);
+        int[] place = new int[_places];
+        for ( int p = 0; p < _places; ++p ) {
+            place[p] = p;
+        }
+        for ( int m = 0; m < count; ++m ) {
+            System.arraycopy(place,0,map,m*_width,_places);
+            // the next permutation in order
+            int i = _places-2;
+            while ( i >= 0 && place[i] > place[i+1] ) {
+                --i;
+            }
+            if ( i < 0 ) {
+                break;
+            }
+            int j = _places-1;
+            while ( place[j] < place[i] ) {
+                --j;
+            }
+            int t = place[i]; place[i] = place[j]; place[j] = t;
+            for ( int a = i+1, b = _places-1; a < b; ++a, --b ) {
+                t = place[a]; place[a] = place[b]; place[b] = t;
+            }
+        }
+        return map;
+    }
+
+    /**
+     *  gets the number of guesses kept
+     *
+     *  @return the number of guesses
+     */
+    int guesses( ) {
+        return _guesses;
+    }
+
+    /**
+     *  gets the number of symmetries of the guesses, not counting the maps
+     *  of digits in no guess
+     *
+     *  @return the number of symmetries
+     */
+    int size( ) {
+        return _count[_guesses];
+    }
+
+    /**
+     *  keeps just the symmetries that also map a guess to itself
+     *
+     *  @param guess the guess
+     */
+    void addGuess( Numbah guess ) {
+        if ( _guesses+1 == _map.length ) {
+            _map = Arrays.copyOf(_map,2*_map.length);
+            _count = Arrays.copyOf(_count,2*_count.length);
+            _used = Arrays.copyOf(_used,2*_used.length);
+        }
+        int[] from = _map[_guesses];
+        int count = _count[_guesses];
+        int[] to = _map[_guesses+1];
+        if ( to == null || to.length < count*_width ) {
+            to = _map[_guesses+1] = new int[from.length];
+        }
+        int kept = 0;
+        for ( int m = 0; m < count; ++m ) {
+            int at = kept*_width;
+            System.arraycopy(from,m*_width,to,at,_width);
+            if ( keeps(to,at,guess) ) {
+                ++kept;
+            }
+        }
+        _count[_guesses+1] = kept;
+        long used = _used[_guesses];
+        for ( int place = 0; place < _places; ++place ) {
+            used |= 1L<<guess.getDigit(place);
+        }
+        _used[_guesses+1] = used;
+        ++_guesses;
+    }
+
+    /**
+     *  checks that a symmetry maps a guess to itself,
+     *  mapping the digits of the guess that weren't yet
+     *
+     *  @param map   the symmetries
+     *  @param at    the index of the symmetry
+     *  @param guess the guess
+     *
+     *  @return true iff the guess is kept
+     */
+    private boolean keeps( int[] map, int at, Numbah guess ) {
+        int digits = at+_places;
+        for ( int place = 0; place < _places; ++place ) {
+            int digit = guess.getDigit(place);
+            int image = guess.getDigit(map[at+place]);
+            int was = map[digits+digit];
+            if ( was < 0 ) {
+                // another digit mustn't map to the image already
+                for ( int d = 0; d < _digits; ++d ) {
+                    if ( map[digits+d] == image ) {
+                        return false;
+                    }
+                }
+                map[digits+digit] = image;
+            } else if ( was != image ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  goes back to the symmetries before the last guess
+     */
+    void removeGuess( ) {
+        if ( _guesses > 0 ) {
+            --_guesses;
+        }
+    }
+
+    /**
+     *  finds the number that represents the class of a number:
+     *  the one of least rank that a symmetry maps it to
+     *
+     *  @param n the number
+     *
+     *  @return the rank of the representative
+     */
+    int canonical( Numbah n ) {
+        return canonical(n,0);
+    }
+
+    /**
+     *  finds the number that represents the class of a number,
+     *  also counting as symmetries the maps of some digits known to be
+     *  absent to each other; those must be mapped to themselves by all the
+     *  symmetries, as the digits in none of the candidates are
+     *
+     *  @param n      the number
+     *  @param absent the digits known to be absent, a bit for each
+     *
+     *  @return the rank of the representative
+     */
+    int canonical( Numbah n, long absent ) {
+        int[] map = _map[_guesses];
+        // with no guesses, every number is the same
+        int count = _guesses == 0 ? 1 : _count[_guesses];
+        long used = _used[_guesses];
+        long all = Configuration.allDigits(_digits);
+        absent &= all;
+        long free = all & ~used & ~absent; // the other digits in no guess
+        int least = Integer.MAX_VALUE;
+        for ( int m = 0; m < count; ++m ) {
+            int at = m*_width;
+            int digits = at+_places;
+            for ( int place = 0; place < _places; ++place ) {
+                _digit[map[at+place]] = n.getDigit(place);
+            }
+            Arrays.fill(_free,-1);
+            long toAbsent = absent; // the absent digits left to relabel to
+            long toFree = free;     // the free digits left to relabel to
+            for ( int place = _places-1; place >= 0; --place ) {
+                int digit = _digit[place];
+                int image = (used & (1L<<digit)) != 0 ?
+                    map[digits+digit] : digit;
+                if ( (absent & (1L<<image)) != 0 ) {
+                    if ( _free[image] < 0 ) {
+                        _free[image] = Long.numberOfTrailingZeros(toAbsent);
+                        toAbsent &= toAbsent-1;
+                    }
+                    image = _free[image];
+                } else if ( (free & (1L<<image)) != 0 ) {
+                    if ( _free[image] < 0 ) {
+                        _free[image] = Long.numberOfTrailingZeros(toFree);
+                        toFree &= toFree-1;
+                    }
+                    image = _free[image];
+                }
+                _mapped.setDigit(image,place);
+            }
+            least = Math.min(least,_table.rank(_mapped));
+        }
+        return least;
+    }
+
+    /**
+     *  keeps just the first number of each class in part of an array of
+     *  ranks, moving those kept to the start of the part, in order
+     *
+     *  @param rank the ranks of the numbers
+     *  @param from the index of the first in the part
+     *  @param to   one more than the index of the last
+     *
+     *  @return one more than the index of the last kept
+     */
+    int reduce( int[] rank, int from, int to ) {
+        return reduce(rank,from,to,0);
+    }
+
+    /**
+     *  keeps just the first number of each class in part of an array of
+     *  ranks, also counting as symmetries the maps of some digits known to
+     *  be absent to each other (see canonical())
+     *
+     *  @param rank   the ranks of the numbers
+     *  @param from   the index of the first in the part
+     *  @param to     one more than the index of the last
+     *  @param absent the digits known to be absent, a bit for each
+     *
+     *  @return one more than the index of the last kept
+     */
+    int reduce( int[] rank, int from, int to, long absent ) {
+        if ( ++_mark == 0 ) {
+            Arrays.fill(_seen,0);
+            _mark = 1;
+        }
+        int kept = from;
+        for ( int i = from; i < to; ++i ) {
+            int c = canonical(_table.get(rank[i]),absent);
+            if ( _seen[c] != _mark ) {
+                _seen[c] = _mark;
+                rank[kept++] = rank[i];
+            }
+        }
+        return kept;
+    }
+
+    /**
+     *  tests the class, playing a game against a pseudorandom target,
+     *  always guessing the first candidate, and printing how many of all
+     *  the numbers and of the candidates are left after reduce();
+     *  the digits and places are given by the NDNG.DIGITS and NDNG.PLACES
+     *  system properties
+     *
+     *  @param arg ignored
+     */
+    public static void main( String[] arg ) throws Exception {
+        Configuration.setPlaces(System.getProperty("NDNG.PLACES"));
+        Configuration.setDigits(System.getProperty("NDNG.DIGITS"));
+        Configuration configuration = Configuration.getDefault();
+        NumberTable table = NumberTable.get(configuration);
+        Symmetry symmetry = new Symmetry(configuration);
+        Numbah target = Numbah.random(configuration);
+        int size = table.size();
+        int[] candidate = new int[size];
+        for ( int rank = 0; rank < size; ++rank ) {
+            candidate[rank] = rank;
+        }
+        int count = size;
+        int[] rank = new int[size];
+        System.out.println(configuration+", target "+target);
+        while ( count > 0 ) {
+            for ( int r = 0; r < size; ++r ) {
+                rank[r] = r;
+            }
+            long start = System.nanoTime();
+            int all = symmetry.reduce(rank,0,size);
+            int[] left = Arrays.copyOf(candidate,count);
+            int candidates = symmetry.reduce(left,0,count);
+            System.out.println(
+                symmetry.guesses()+" guesses, "+symmetry.size()+
+                " symmetries: "+all+" of "+size+" numbers, "+candidates+
+                " of "+count+" candidates in "+
+                (System.nanoTime()-start)/1000000+" ms"
+            );
+            Numbah guess = table.get(candidate[0]);
+            Score score = target.score(guess);
+            System.out.println(guess+" "+score);
+            if ( score.correct() ) {
+                break;
+            }
+            int index = target.scoreIndex(guess);
+            int kept = 0;
+            for ( int c = 0; c < count; ++c ) {
+                if ( table.get(candidate[c]).scoreIndex(guess) == index ) {
+                    candidate[kept++] = candidate[c];
+                }
+            }
+            count = kept;
+            symmetry.addGuess(guess);
+        }
+    }
+
+}
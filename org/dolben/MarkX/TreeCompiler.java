@@ -0,0 +1,272 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ *  This compiles the decision tree of a deterministic Generator into a file
+ *  that a TreeGenerator plays back.
+ *  <p></p>
+ *  Every valid number is a target at the root, the Generator makes a guess,
+ *  the guess splits the targets into parts by their scores, and each part
+ *  is compiled in turn the same way, with the Generator told that score
+ *  and making the next guess, then backed up with retractScore(),
+ *  as a Guesser retracts a score, to be told the score of the next part.
+ *  <p></p>
+ *  The file is a header, of TreeGenerator._HEADER bytes:
+ *  a magic number, the digits, the places, the number of scores,
+ *  the bytes of a node, the number of nodes, the most guesses on any path,
+ *  and the offset of the root node;
+ *  then the nodes, each the guess, as NumberCodec writes it,
+ *  padded to a multiple of four bytes, and the offset of the node for each
+ *  score, by its index in the ScoreTable, or 0 when there's none,
+ *  the ints all big endian.
+ */
+class TreeCompiler {
+    private final Configuration _configuration; // the configuration
+    private final Generator     _generator; // the generator compiled
+    private final NumberTable   _table;     // the table of ranked numbers
+    private final ScoreTable    _scores;    // the table of indexed scores
+    private final NumberCodec   _codec;     // writes the guesses
+    private final int           _guessBytes; // the padded bytes of a guess
+    private final int           _nodeBytes; // the bytes of a node
+    private ByteBuffer          _tree;      // the nodes so far
+    private int                 _nodes;     // the number of them
+    private int                 _most;      // the most guesses on a path
+
+    /**
+     *  constructs a compiler of a generator
+     *
+     *  @param generator the generator, which hasn't made a guess yet
+     */
+    TreeCompiler( Generator generator ) {
+        _configuration = generator.getConfiguration();
+        _generator = generator;
+        _table = NumberTable.get(_configuration);
+        _scores = ScoreTable.get(_configuration);
+        _codec = new NumberCodec(_configuration);
+        _guessBytes = (_codec.numberBytes()+3)&~3;
+        _nodeBytes = _guessBytes+4*_scores.size();
+        _tree = ByteBuffer.allocate(TreeGenerator._HEADER+64*_nodeBytes);
+    }
+
+    /**
+     *  compiles the tree, once
+     *
+     *  @return the number of nodes in it
+     */
+    int compile( ) {
+        int[] targets = new int[_table.size()];
+        for ( int rank = 0; rank < targets.length; ++rank ) {
+            targets[rank] = rank;
+        }
+        _tree.position(TreeGenerator._HEADER);
+        int root = node(targets,targets.length,1);
+        _tree.putInt(0,TreeGenerator._MAGIC);
+        _tree.putInt(4,_configuration.digits());
+        _tree.putInt(8,_configuration.places());
+        _tree.putInt(12,_scores.size());
+        _tree.putInt(16,_nodeBytes);
+        _tree.putInt(20,_nodes);
+        _tree.putInt(24,_most);
+        _tree.putInt(28,root);
+        return _nodes;
+    }
+
+    /**
+     *  compiles the node for some targets
+     *
+     *  @param targets the ranks of the targets
+     *  @param count   the number of them
+     *  @param depth   the number of the guess at the node
+     *
+     *  @return the offset of the node
+     */
+    private int node( int[] targets, int count, int depth ) {
+        Numbah guess = new Numbah(_configuration);
+        if ( !_generator.nextGuess(guess) ) {
+            throw new IllegalStateException("Generator failed");
+        }
+        _most = Math.max(_most,depth);
+        int node = allocate(guess);
+        int[] size = new int[_scores.size()];
+        int[] score = new int[count];
+        for ( int i = 0; i < count; ++i ) {
+            score[i] = _table.get(targets[i]).scoreIndex(guess);
+            ++size[score[i]];
+        }
+        for ( int s = 0; s < size.length; ++s ) {
+            Score told = _scores.get(s);
+            if ( size[s] == 0 || told.correct() ) {
+                continue;
+            }
+            int[] part = new int[size[s]];
+            int n = 0;
+            for ( int i = 0; i < count; ++i ) {
+                if ( score[i] == s ) {
+                    part[n++] = targets[i];
+                }
+            }
+            _generator.tellScore(told);
+            int child = node(part,n,depth+1);
+            _tree.putInt(node+_guessBytes+4*s,child);
+            _generator.retractScore();
+        }
+        return node;
+    }
+
+    /**
+     *  adds a node for a guess, with no children yet,
+     *  growing the tree as needed
+     *
+     *  @return the offset of the node
+     */
+    private int allocate( Numbah guess ) {
+        if ( _tree.remaining() < _nodeBytes ) {
+            if ( (long)_tree.capacity()*2 > Integer.MAX_VALUE ) {
+                throw new IllegalStateException("too many nodes for a tree");
+            }
+            ByteBuffer tree = ByteBuffer.allocate(2*_tree.capacity());
+            _tree.flip();
+            tree.put(_tree);
+            _tree = tree;
+        }
+        int node = _tree.position();
+        _codec.putNumber(_tree,guess);
+        _tree.position(node+_nodeBytes);
+        ++_nodes;
+        return node;
+    }
+
+    /**
+     *  writes the compiled tree to a temporary file
+     *  and then renames that to the file,
+     *  so that no TreeGenerator ever sees a partial one
+     *
+     *  @param file the file
+     *
+     *  @exception IOException when the file cannot be written
+     */
+    void write( File file ) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(),".tmp",dir);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel channel = out.getChannel();
+                ByteBuffer tree = _tree.duplicate();
+                tree.flip();
+                while ( tree.hasRemaining() ) {
+                    channel.write(tree);
+                }
+                channel.force(true);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(
+                    temp.toPath(),file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            } catch ( AtomicMoveNotSupportedException e ) {
+                Files.move(
+                    temp.toPath(),file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING
+                );
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     *  makes a generator by name;
+     *  all but Partition are deterministic, and it is only so when it
+     *  doesn't hit its time budget (NDNG.BUDGET), so a tree compiled from
+     *  it, or guesses cached from it, are only good if the budget is big
+     *  enough for every guess
+     *
+     *  @param name          BruteForce, Candidate, Monitors or Partition
+     *  @param configuration the configuration
+     *
+     *  @return the generator
+     */
+    static Generator newGenerator(
+        String name, Configuration configuration
+    ) {
+        switch ( name ) {
+        case "BruteForce":
+            return new BruteForceGenerator(configuration);
+        case "Candidate":
+            return new CandidateGenerator(configuration);
+        case "Monitors":
+            return new MonitorsGenerator(configuration);
+        case "Partition":
+            return new PartitionGenerator(
+                configuration,
+                PartitionGenerator.Criterion.valueOf(
+                    System.getProperty("NDNG.CRITERION","WORST")
+                )
+            );
+        default:
+            throw new IllegalArgumentException("no generator "+name);
+        }
+    }
+
+    /**
+     *  compiles the tree of a generator into a file,
+     *  which is only the generator's if it's deterministic
+     *  (see newGenerator())
+     *
+     *  @param arg the file, and the name of the generator
+     *  (BruteForce by default)
+     */
+    public static void main( String[] arg ) throws Exception {
+        Configuration.setPlaces(System.getProperty("NDNG.PLACES"));
+        Configuration.setDigits(System.getProperty("NDNG.DIGITS"));
+        Configuration configuration = Configuration.getDefault();
+        if ( arg.length < 1 ) {
+            System.out.println("usage: TreeCompiler file [generator]");
+            return;
+        }
+        String name = arg.length > 1 ? arg[1] : "BruteForce";
+        long start = System.currentTimeMillis();
+        TreeCompiler compiler =
+            new TreeCompiler(newGenerator(name,configuration));
+        int nodes = compiler.compile();
+        compiler.write(new File(arg[0]));
+        System.out.println(
+            configuration+", "+name+": "+nodes+" nodes, most "+
+            compiler._most+" guesses, in "+
+            (System.currentTimeMillis()-start)+" ms"
+        );
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkX;
+
+import org.dolben.MarkN.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *  This class contains the <i>N</i> digit number game guess Generator
+ *  that plays back a decision tree compiled by a TreeCompiler.
+ *  <p></p>
+ *  The tree file is mapped into memory, read only, once, and shared by
+ *  every generator of it, each of which just keeps the offsets of the
+ *  nodes on its path, so a guess is a lookup, whatever generator the
+ *  tree was compiled from.
+ */
+class TreeGenerator extends Generator {
+    static final int _MAGIC = 0x54726565; // marks a tree file
+    static final int _HEADER = 32;        // the bytes before the nodes
+
+    private final ByteBuffer  _tree;       // this generator's view of the tree
+    private final ScoreTable  _scores;     // the table of indexed scores
+    private final NumberCodec _codec;      // reads the guesses
+    private final int         _guessBytes; // the padded bytes of a guess
+    private final int[]       _node;       // the offset of the node for each guess
+    private int               _guesses;    // the number of guesses made
+
+    /**
+     *  maps a tree file for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param file          the file
+     *
+     *  @return the mapped tree, to share among generators
+     *
+     *  @exception IOException when the file can't be read
+     *  or isn't a tree for the configuration
+     */
+    static ByteBuffer map( Configuration configuration, File file )
+        throws IOException {
+        RandomAccessFile f = new RandomAccessFile(file,"r");
+        try {
+            long length = f.length();
+            if ( length < _HEADER || length > Integer.MAX_VALUE ) {
+                throw new IOException("bad tree "+file);
+            }
+            ByteBuffer tree = f.getChannel().map(
+                FileChannel.MapMode.READ_ONLY,0,length
+            );
+            if ( tree.getInt(0) != _MAGIC ||
+                    tree.getInt(4) != configuration.digits() ||
+                    tree.getInt(8) != configuration.places() ||
+                    tree.getInt(12) != ScoreTable.get(configuration).size() ||
+                    _HEADER+(long)tree.getInt(16)*tree.getInt(20) != length ) {
+                throw new IOException("bad tree "+file+" for "+configuration);
+            }
+            return tree;
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     *  constructs a generator for a configuration
+     *
+     *  @param configuration the configuration
+     *  @param tree          the tree, as map() gives
+     */
+    TreeGenerator( Configuration configuration, ByteBuffer tree ) {
+        super(configuration);
+        _tree = tree.duplicate();
+        _scores = ScoreTable.get(configuration);
+        _codec = new NumberCodec(configuration);
+        _guessBytes = (_codec.numberBytes()+3)&~3;
+        _node = new int[_tree.getInt(24)+1];
+        _node[0] = _tree.getInt(28);
+        _guesses = 0;
+    }
+
+    /**
+     *  generates the next guess
+     *
+     *  @param guess the next generated guess
+     *
+     *  @return true iff there is a next guess.
+     *
+     *  (It won't be possible to generate a guess if scores given for
+     *  the previous guesses are logically inconsistent.)
+     */
+    public boolean nextGuess( Numbah guess ) {
+        int node = _node[_guesses];
+        if ( node == 0 ) {
+            return false;
+        }
+        _tree.position(node);
+        _codec.getNumber(_tree,guess);
+        ++_guesses;
+        return true;
+    }
+
+    /**
+     *  is given a score for the last guess
+     *
+     *  @param score the score for the last guess
+     */
+    public void tellScore( Score score ) {
+        _node[_guesses] = _tree.getInt(
+            _node[_guesses-1]+_guessBytes+4*_scores.index(score)
+        );
+    }
+
+    /**
+     *  backs up to state before last nextGuess()
+     */
+    public void retractScore( ) {
+        _guesses--;
+    }
+
+    /**
+     *  tests the class, with the tree file given, or else named by the
+     *  NDNG.TREE system property
+     *
+     *  @param arg the tree file
+     */
+    public static void main( String[] arg ) throws Exception {
+        Configuration.setPlaces(System.getProperty("NDNG.PLACES"));
+        Configuration.setDigits(System.getProperty("NDNG.DIGITS"));
+        final Configuration configuration = Configuration.getDefault();
+        String name = arg.length > 0 ? arg[0] : System.getProperty("NDNG.TREE");
+        if ( name == null ) {
+            System.out.println("usage: TreeGenerator file");
+            return;
+        }
+        final ByteBuffer tree = map(configuration,new File(name));
+        GeneratorTest test = new GeneratorTest(configuration) {
+            public Generator newGenerator() {
+                return new TreeGenerator(getConfiguration(),tree);
+            }
+        };
+        test.test();
+    }
+
+}
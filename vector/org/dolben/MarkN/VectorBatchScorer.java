@@ -0,0 +1,102 @@
+/**
+ *  MarkN: interactive n digit number game
+ *  Copyright (c) 2000-2010 Hank Dolben
+ *
+ *  This program is free software; you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation; either version 2 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program; if not, write to the Free Software
+ *  Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+
+package org.dolben.MarkN;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *  This is a BatchScorer that scores a vector of candidates at a time,
+ *  with the same operations as the ScoreKernel in each lane.
+ *  </p><p>
+ *  It needs the jdk.incubator.vector module
+ *  (javac and java --add-modules jdk.incubator.vector),
+ *  so it's kept apart from the other sources and built only on request
+ *  (see BatchScorer);
+ *  it is only made by BatchScorer.get(), which falls back when it can't be.
+ */
+class VectorBatchScorer extends BatchScorer {
+    private static final VectorSpecies<Integer> _INTS =
+        IntVector.SPECIES_PREFERRED.length() >= 8 ?
+            IntVector.SPECIES_PREFERRED : IntVector.SPECIES_256;
+    private static final VectorSpecies<Byte> _BYTES = VectorSpecies.of(
+        byte.class,VectorShape.forBitSize(_INTS.length()*8)
+    );
+    private static final int _LOW = 0x11111111; // the low field bits
+
+    /**
+     *  constructs a scorer that scores a vector of candidates at a time
+     *
+     *  @param configuration the configuration
+     */
+    VectorBatchScorer( Configuration configuration ) {
+        super(configuration);
+    }
+
+    /**
+     *  scores a guess against a range of candidates
+     *  (see BatchScorer.score())
+     */
+    public void score(
+        Numbah guess, int[] code, int from, int to, byte[] index
+    ) {
+        IntVector mask = IntVector.broadcast(_INTS,(int)guess.getMask());
+        IntVector word = IntVector.broadcast(_INTS,(int)guess.getWord());
+        int places = _places;
+        int i = from;
+        for ( int end = from+_INTS.loopBound(to-from); i < end;
+                i += _INTS.length() ) {
+            IntVector c = IntVector.fromArray(_INTS,code,i);
+            // the places that differ, counted by summing the low field bits
+            // into the top field
+            IntVector differ = c.lanewise(VectorOperators.XOR,word);
+            differ = differ.lanewise(
+                VectorOperators.OR,differ.lanewise(VectorOperators.LSHR,1)
+            );
+            differ = differ.lanewise(
+                VectorOperators.OR,differ.lanewise(VectorOperators.LSHR,2)
+            );
+            IntVector different = differ
+                .lanewise(VectorOperators.AND,_LOW)
+                .mul(_LOW)
+                .lanewise(VectorOperators.LSHR,28);
+            // the digits of the candidate that are in the guess's mask
+            IntVector common = IntVector.zero(_INTS);
+            for ( int place = 0; place < places; ++place ) {
+                IntVector digit = c
+                    .lanewise(VectorOperators.LSHR,ScoreKernel._BITS*place)
+                    .lanewise(VectorOperators.AND,ScoreKernel._MAX_DIGITS-1);
+                common = common.add(
+                    mask.lanewise(VectorOperators.LSHR,digit)
+                        .lanewise(VectorOperators.AND,1)
+                );
+            }
+            // placed*(places+1)+misplaced == placed*places+common
+            IntVector score = different.neg().add(places).mul(places).add(common);
+            ((ByteVector)score.convertShape(VectorOperators.I2B,_BYTES,0))
+                .intoArray(index,i);
+        }
+        super.score(guess,code,i,to,index);
+    }
+
+}